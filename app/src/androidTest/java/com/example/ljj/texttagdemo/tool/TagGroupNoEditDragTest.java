@@ -0,0 +1,164 @@
+package com.example.ljj.texttagdemo.tool;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A tag appended or removed from another thread while a tag is dragged ends the drag, instead
+ * of leaving the drag with the layout of the previous children.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TagGroupNoEditDragTest {
+    private Instrumentation mInstrumentation;
+    private TagGroupNoEdit mGroup;
+    private FrameLayout mParent;
+    private long mDownTime;
+    private final List<String> mMoves = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final Context context = InstrumentationRegistry.getTargetContext();
+                mParent = new FrameLayout(context);
+                mGroup = new TagGroupNoEdit.Builder(context).build();
+                mParent.addView(mGroup);
+                mGroup.setDragReorderEnabled(true);
+                mGroup.setOnTagMoveListener(new TagGroupNoEdit.OnTagMoveListener() {
+                    @Override
+                    public void onTagMove(TagGroupNoEdit tagGroup, String tag, int from, int to) {
+                        mMoves.add(tag + " " + from + ">" + to);
+                    }
+                });
+                mGroup.setTags("a", "bb", "ccc", "dddd");
+                layout();
+            }
+        });
+    }
+
+    @Test
+    public void appendDuringDrag() throws Exception {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                startDrag(0);
+            }
+        });
+        awaitChange(true, "eeeee");
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // The tags of the old drag layout, and the appended tag which it does not know.
+                moveOverEveryTag();
+                touch(MotionEvent.ACTION_UP, 0, 0);
+            }
+        });
+        assertEquals(Arrays.asList("a", "bb", "ccc", "dddd", "eeeee"), Arrays.asList(mGroup.getTags()));
+        assertTrue(mMoves.toString(), mMoves.isEmpty());
+    }
+
+    @Test
+    public void removeDraggedTagDuringDrag() throws Exception {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                startDrag(1);
+                moveOver(3);
+            }
+        });
+        awaitChange(false, "bb");
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                moveOverEveryTag();
+                touch(MotionEvent.ACTION_UP, 0, 0);
+            }
+        });
+        assertEquals(Arrays.asList("a", "ccc", "dddd"), Arrays.asList(mGroup.getTags()));
+        // Dropped where it was when removed.
+        assertEquals(Arrays.asList("bb 1>3"), mMoves);
+    }
+
+    /**
+     * Post the change from this thread, and wait until it is applied on the UI thread.
+     */
+    private void awaitChange(boolean append, String tag) throws InterruptedException {
+        final CountDownLatch applied = new CountDownLatch(1);
+        mGroup.setOnTagChangeListener(new TagGroupNoEdit.OnTagChangeListener() {
+            @Override
+            public void onAppend(TagGroupNoEdit tagGroup, String tag) {
+                applied.countDown();
+            }
+
+            @Override
+            public void onDelete(TagGroupNoEdit tagGroup, String tag) {
+                applied.countDown();
+            }
+        });
+        if (append) {
+            mGroup.postAppendTag(tag);
+        } else {
+            mGroup.postRemoveTag(tag);
+        }
+        assertTrue(applied.await(5, TimeUnit.SECONDS));
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                layout();
+            }
+        });
+    }
+
+    private void layout() {
+        mParent.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mParent.layout(0, 0, mParent.getMeasuredWidth(), mParent.getMeasuredHeight());
+    }
+
+    private void startDrag(int index) {
+        final View tag = mGroup.getTagAt(index);
+        mDownTime = SystemClock.uptimeMillis();
+        touch(MotionEvent.ACTION_DOWN, tag.getLeft() + tag.getWidth() / 2, tag.getTop() + tag.getHeight() / 2);
+        assertTrue(tag.performLongClick());
+    }
+
+    private void moveOver(int index) {
+        final View tag = mGroup.getTagAt(index);
+        touch(MotionEvent.ACTION_MOVE, tag.getLeft() + tag.getWidth() / 2, tag.getTop() + tag.getHeight() / 2);
+    }
+
+    private void moveOverEveryTag() {
+        for (int i = mGroup.getChildCount() - 1; i >= 0; i--) {
+            moveOver(i);
+        }
+    }
+
+    private void touch(int action, float x, float y) {
+        final MotionEvent event = MotionEvent.obtain(mDownTime, SystemClock.uptimeMillis(), action, x, y, 0);
+        mGroup.dispatchTouchEvent(event);
+        event.recycle();
+    }
+}
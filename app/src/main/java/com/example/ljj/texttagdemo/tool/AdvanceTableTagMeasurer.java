@@ -0,0 +1,165 @@
+package com.example.ljj.texttagdemo.tool;
+
+import android.graphics.Typeface;
+import android.text.TextPaint;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link TagMeasurer} adding up glyph advances from a table per text style, instead of
+ * shaping the text. Short tags are either CJK labels, whose glyphs all have the same full-width
+ * advance, or plain ASCII labels, whose advances are measured once per char and style.
+ * <p>
+ * Any other text, including CJK mixed with ASCII, is left to the tag view, as are the scripts
+ * whose width is not the sum of their glyph advances. Kerning between ASCII glyphs is not
+ * accounted for, {@link TagGroupNoEdit#setOnMeasureMismatchListener} reports the tags where it
+ * matters. The measurer is meant to be used on the UI thread.
+ * </p>
+ */
+public class AdvanceTableTagMeasurer implements TagMeasurer {
+    private static final char FIRST_ASCII = 0x20;
+    private static final char LAST_ASCII = 0x7E;
+
+    /**
+     * The char whose advance is the one of all full-width glyphs.
+     */
+    private static final String FULL_WIDTH_SAMPLE = "中";
+
+    private final Map<Key, AdvanceTable> mTables = new HashMap<>();
+
+    /**
+     * The key of the last used table, most tags of a group share the same style.
+     */
+    private Key mLastKey;
+    private AdvanceTable mLastTable;
+
+    private final char[] mChar = new char[1];
+
+    @Override
+    public float measureText(CharSequence text, TextPaint paint) {
+        final int length = text.length();
+        if (length == 0) {
+            return 0;
+        }
+        final boolean fullWidth = isFullWidth(text.charAt(0));
+        if (!fullWidth && !isAscii(text.charAt(0))) {
+            return -1;
+        }
+
+        final AdvanceTable table = getTable(paint);
+        if (fullWidth) {
+            for (int i = 1; i < length; i++) {
+                if (!isFullWidth(text.charAt(i))) {
+                    return -1;
+                }
+            }
+            if (Float.isNaN(table.fullWidthAdvance)) {
+                table.fullWidthAdvance = paint.measureText(FULL_WIDTH_SAMPLE);
+            }
+            return table.fullWidthAdvance * length;
+        }
+
+        float width = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (!isAscii(c)) {
+                return -1;
+            }
+            float advance = table.asciiAdvances[c - FIRST_ASCII];
+            if (Float.isNaN(advance)) {
+                mChar[0] = c;
+                advance = paint.measureText(mChar, 0, 1);
+                table.asciiAdvances[c - FIRST_ASCII] = advance;
+            }
+            width += advance;
+        }
+        return width;
+    }
+
+    /**
+     * Drop all the advance tables, e.g. after the fonts changed.
+     */
+    public void clear() {
+        mTables.clear();
+        mLastKey = null;
+        mLastTable = null;
+    }
+
+    private AdvanceTable getTable(TextPaint paint) {
+        final float textSize = paint.getTextSize();
+        final Typeface typeface = paint.getTypeface();
+        final float textScaleX = paint.getTextScaleX();
+        if (mLastKey != null && mLastKey.matches(textSize, typeface, textScaleX)) {
+            return mLastTable;
+        }
+        final Key key = new Key(textSize, typeface, textScaleX);
+        AdvanceTable table = mTables.get(key);
+        if (table == null) {
+            table = new AdvanceTable();
+            mTables.put(key, table);
+        }
+        mLastKey = key;
+        mLastTable = table;
+        return table;
+    }
+
+    private static boolean isAscii(char c) {
+        return c >= FIRST_ASCII && c <= LAST_ASCII;
+    }
+
+    /**
+     * Returns true for the CJK ideographs, kana, CJK punctuation and full-width forms.
+     */
+    private static boolean isFullWidth(char c) {
+        return (c >= 0x4E00 && c <= 0x9FFF) // CJK unified ideographs
+                || (c >= 0x3400 && c <= 0x4DBF) // CJK unified ideographs extension A
+                || (c >= 0x3000 && c <= 0x3029) // CJK symbols and punctuation, without combining marks
+                || (c >= 0x3041 && c <= 0x3096) // Hiragana
+                || (c >= 0x30A1 && c <= 0x30FA) // Katakana
+                || (c >= 0xFF01 && c <= 0xFF60); // Full-width forms
+    }
+
+    private static final class AdvanceTable {
+        float fullWidthAdvance = Float.NaN;
+        final float[] asciiAdvances = new float[LAST_ASCII - FIRST_ASCII + 1];
+
+        AdvanceTable() {
+            Arrays.fill(asciiAdvances, Float.NaN);
+        }
+    }
+
+    private static final class Key {
+        final float textSize;
+        final Typeface typeface;
+        final float textScaleX;
+
+        Key(float textSize, Typeface typeface, float textScaleX) {
+            this.textSize = textSize;
+            this.typeface = typeface;
+            this.textScaleX = textScaleX;
+        }
+
+        boolean matches(float textSize, Typeface typeface, float textScaleX) {
+            return this.textSize == textSize && this.typeface == typeface && this.textScaleX == textScaleX;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return matches(other.textSize, other.typeface, other.textScaleX);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(textSize);
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            result = 31 * result + Float.floatToIntBits(textScaleX);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.ljj.texttagdemo.tool;
+
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+/**
+ * Truncates long tag texts to a max width, caching the result per (text, width, style) so a tag
+ * is measured and ellipsized only once, instead of on every measure pass of its view.
+ */
+final class TagEllipsizer {
+    private static final int CACHE_SIZE = 512;
+
+    private static final LruCache<Key, CharSequence> sCache = new LruCache<>(CACHE_SIZE);
+
+    private TagEllipsizer() {
+    }
+
+    /**
+     * Returns the text ellipsized at the end to fit the width, or the text itself if it fits.
+     *
+     * @param text           the full tag text.
+     * @param paint          the paint the text is drawn with.
+     * @param availableWidth the max width of the text, excluding the tag padding.
+     * @return the text to display.
+     */
+    static CharSequence ellipsize(CharSequence text, TextPaint paint, int availableWidth) {
+        final String string = text.toString();
+        final Key key = new Key(string, availableWidth, paint.getTextSize(), paint.getTypeface());
+        CharSequence result = sCache.get(key);
+        if (result == null) {
+            result = TextUtils.ellipsize(string, paint, availableWidth, TextUtils.TruncateAt.END);
+            sCache.put(key, result);
+        }
+        return result;
+    }
+
+    private static final class Key {
+        final String text;
+        final int width;
+        final float textSize;
+        final Typeface typeface;
+
+        Key(String text, int width, float textSize, Typeface typeface) {
+            this.text = text;
+            this.width = width;
+            this.textSize = textSize;
+            this.typeface = typeface;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return width == other.width && textSize == other.textSize
+                    && typeface == other.typeface && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + width;
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            return result;
+        }
+    }
+}
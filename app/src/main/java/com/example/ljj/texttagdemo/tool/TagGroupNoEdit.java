@@ -1,7 +1,8 @@
 package com.example.ljj.texttagdemo.tool;
 
 import android.content.Context;
-import android.content.res.TypedArray;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.DashPathEffect;
@@ -10,26 +11,55 @@ import android.graphics.Path;
 import android.graphics.PathEffect;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.Typeface;
 import android.os.Parcel;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcelable;
+import android.text.Editable;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.text.method.ArrowKeyMovementMethod;
 import android.util.AttributeSet;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputConnection;
 import android.view.inputmethod.InputConnectionWrapper;
+import android.widget.OverScroller;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.ljj.texttagcore.Tag;
+import com.example.ljj.texttagcore.TagFilter;
+import com.example.ljj.texttagcore.TagLayout;
+import com.example.ljj.texttagcore.TagLineBreaker;
+import com.example.ljj.texttagcore.TagSelection;
+import com.example.ljj.texttagcore.TagSelectionJournal;
+import com.example.ljj.texttagcore.TagWrapLayout;
 import com.example.ljj.texttagdemo.R;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A <code>TagGroup</code> is a special layout with a set of tags.
@@ -50,23 +80,39 @@ import java.util.List;
  * @since 2015-2-3 14:16:32
  */
 public class TagGroupNoEdit extends ViewGroup {
-    private final int default_border_color = Color.rgb(0x49, 0xC1, 0x20);
-    private final int default_text_color = Color.rgb(0x49, 0xC1, 0x20);
-    private final int default_background_color = Color.WHITE;
-    private final int default_dash_border_color = Color.rgb(0xAA, 0xAA, 0xAA);
-    private final int default_input_hint_color = Color.argb(0x80, 0x00, 0x00, 0x00);
-    private final int default_input_text_color = Color.argb(0xDE, 0x00, 0x00, 0x00);
-    private final int default_checked_border_color = Color.rgb(0x49, 0xC1, 0x20);
-    private final int default_checked_text_color = Color.WHITE;
-    private final int default_checked_marker_color = Color.WHITE;
-    private final int default_checked_background_color = Color.rgb(0x49, 0xC1, 0x20);
-    private final int default_pressed_background_color = Color.rgb(0xED, 0xED, 0xED);
-    private final float default_border_stroke_width;
-    private final float default_text_size;
-    private final float default_horizontal_spacing;
-    private final float default_vertical_spacing;
-    private final float default_horizontal_padding;
-    private final float default_vertical_padding;
+    /**
+     * The delay between the last keystroke and the suggestion lookup.
+     */
+    private static final long SUGGESTION_DEBOUNCE_MILLIS = 150;
+
+    /**
+     * The duration of the tag moves while dragging a tag.
+     */
+    private static final long DRAG_ANIMATION_DURATION = 150;
+
+    /**
+     * The duration of the insert, remove and check transitions.
+     */
+    private static final long TRANSITION_DURATION = 200;
+
+    /**
+     * The max bytes of the tag bitmaps kept by a group for the draw cache on a software canvas,
+     * see {@link #setStaticDrawCacheEnabled(boolean)}.
+     */
+    public static final int MAX_SOFTWARE_DRAW_CACHE_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The single background thread shared by all groups for suggestion lookups.
+     */
+    private static final ExecutorService SUGGESTION_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "TagGroup-suggest");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
 
     /**
      * The text to be displayed when the text of the INPUT tag is empty.
@@ -158,340 +204,1903 @@ public class TagGroupNoEdit extends ViewGroup {
      */
     private int verticalPadding;
 
-    private int maxChooseCount;
-
-    private boolean isChildCenter = false;
-
     /**
-     * Listener used to dispatch tag change event.
+     * The max tag width, longer tags are ellipsized at the end, default is 0 means no limit.
      */
-    private OnTagChangeListener mOnTagChangeListener;
+    private int maxTagWidth;
+
+    private int maxChooseCount;
 
     /**
-     * Listener used to dispatch tag click event.
+     * The number of checked tags, kept up to date by {@link TagView#setChecked(boolean)}.
      */
-    private OnTagClickListener mOnTagClickListener;
+    private int mCheckedCount;
 
     /**
-     * Listener used to handle tag click event.
+     * The selection of the children, checking the NORMAL tags through their tag view.
      */
-    private InternalTagClickListener mInternalTagClickListener = new InternalTagClickListener();
-
-    public TagGroupNoEdit(Context context) {
-        this(context, null);
-    }
-
-    public TagGroupNoEdit(Context context, AttributeSet attrs) {
-        this(context, attrs, R.attr.tagGroupStyle);
-    }
+    private final TagSelection mChildSelection = new TagSelection() {
+        @Override
+        public int size() {
+            return getChildCount();
+        }
 
-    public TagGroupNoEdit(Context context, AttributeSet attrs, int defStyleAttr) {
-        super(context, attrs, defStyleAttr);
-        default_border_stroke_width = dp2px(0.5f);
-        default_text_size = sp2px(13.0f);
-        default_horizontal_spacing = dp2px(8.0f);
-        default_vertical_spacing = dp2px(4.0f);
-        default_horizontal_padding = dp2px(12.0f);
-        default_vertical_padding = dp2px(3.0f);
-
-        // Load styled attributes.
-        final TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.TagGroup, defStyleAttr, R.style.TagGroupNoEdit);
-        try {
-            borderColor = a.getColor(R.styleable.TagGroup_atg_borderColor, default_border_color);
-            textColor = a.getColor(R.styleable.TagGroup_atg_textColor, default_text_color);
-            backgroundColor = a.getColor(R.styleable.TagGroup_atg_backgroundColor, default_background_color);
-            dashBorderColor = a.getColor(R.styleable.TagGroup_atg_dashBorderColor, default_dash_border_color);
-            checkedBorderColor = a.getColor(R.styleable.TagGroup_atg_checkedBorderColor, default_checked_border_color);
-            checkedTextColor = a.getColor(R.styleable.TagGroup_atg_checkedTextColor, default_checked_text_color);
-            checkedMarkerColor = a.getColor(R.styleable.TagGroup_atg_checkedMarkerColor, default_checked_marker_color);
-            checkedBackgroundColor = a.getColor(R.styleable.TagGroup_atg_checkedBackgroundColor, default_checked_background_color);
-            pressedBackgroundColor = a.getColor(R.styleable.TagGroup_atg_pressedBackgroundColor, default_pressed_background_color);
-            borderStrokeWidth = a.getDimension(R.styleable.TagGroup_atg_borderStrokeWidth, default_border_stroke_width);
-            textSize = a.getDimension(R.styleable.TagGroup_atg_textSize, default_text_size);
-            horizontalSpacing = (int) a.getDimension(R.styleable.TagGroup_atg_horizontalSpacing, default_horizontal_spacing);
-            verticalSpacing = (int) a.getDimension(R.styleable.TagGroup_atg_verticalSpacing, default_vertical_spacing);
-            horizontalPadding = (int) a.getDimension(R.styleable.TagGroup_atg_horizontalPadding, default_horizontal_padding);
-            verticalPadding = (int) a.getDimension(R.styleable.TagGroup_atg_verticalPadding, default_vertical_padding);
-        } finally {
-            a.recycle();
+        @Override
+        public Tag getTag(int index) {
+            return new Tag(getTagAt(index).getTagText().toString());
         }
-    }
 
-    @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        final int widthMode = MeasureSpec.getMode(widthMeasureSpec);
-        final int heightMode = MeasureSpec.getMode(heightMeasureSpec);
-        int widthSize = MeasureSpec.getSize(widthMeasureSpec);
-        final int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+        @Override
+        public boolean isChecked(int index) {
+            return getTagAt(index).isChecked;
+        }
 
-        measureChildren(widthMeasureSpec, heightMeasureSpec);
+        @Override
+        public int getCheckedCount() {
+            return mCheckedCount;
+        }
 
-        int width = 0;
-        int height = 0;
+        @Override
+        public boolean isCheckable(int index) {
+            return getTagAt(index).mState == TagView.STATE_NORMAL;
+        }
 
-        int row = 0; // The row counter.
-        int rowWidth = 0; // Calc the current row width.
-        int rowMaxHeight = 0; // Calc the max tag height, in current row.
+        @Override
+        protected void set(int index, boolean checked) {
+            getTagAt(index).setChecked(checked);
+        }
+    };
 
-        final int count = getChildCount();
-        for (int i = 0; i < count; i++) {
-            final View child = getChildAt(i);
-            final int childWidth = child.getMeasuredWidth();
-            final int childHeight = child.getMeasuredHeight();
+    /**
+     * The selection of all the tags of the single row mode. The tag view of a bound tag is
+     * updated, a tag without a tag view only has its state changed.
+     */
+    private final TagSelection mStripSelection = new TagSelection() {
+        @Override
+        public int size() {
+            return mStripChecked.length;
+        }
 
-            if (child.getVisibility() != GONE) {
-                rowWidth += childWidth;
-                if (rowWidth > widthSize) { // Next line.
-                    rowWidth = childWidth; // The next row width.
-                    height += rowMaxHeight + verticalSpacing;
-                    rowMaxHeight = childHeight; // The next row max height.
-                    row++;
-                } else { // This line.
-                    rowMaxHeight = Math.max(rowMaxHeight, childHeight);
-                }
-                rowWidth += horizontalSpacing;
-            }
+        @Override
+        public Tag getTag(int index) {
+            return new Tag(mStripTags.get(index));
         }
-        // Account for the last row height.
-        height += rowMaxHeight;
 
-        // Account for the padding too.
-        height += getPaddingTop() + getPaddingBottom();
+        @Override
+        public boolean isChecked(int index) {
+            return mStripChecked[index];
+        }
 
-        // If the tags grouped in one row, set the width to wrap the tags.
-        if (row == 0) {
-            width = rowWidth;
-            width += getPaddingLeft() + getPaddingRight();
-        } else {// If the tags grouped exceed one line, set the width to match the parent.
-            width = widthSize;
+        @Override
+        public int getCheckedCount() {
+            return mCheckedCount;
         }
 
-        setMeasuredDimension(widthMode == MeasureSpec.EXACTLY ? widthSize : width,
-                heightMode == MeasureSpec.EXACTLY ? heightSize : height);
-    }
+        @Override
+        protected void set(int index, boolean checked) {
+            final int childIndex = index - mStripFirstBound;
+            if (childIndex >= 0 && childIndex < getChildCount()) {
+                getTagAt(childIndex).setChecked(checked);
+                return;
+            }
+            mStripChecked[index] = checked;
+            mCheckedCount += checked ? 1 : -1;
+            if (mSelectionJournal != null) {
+                mSelectionJournal.record(mStripTags.get(index), checked);
+            }
+        }
+    };
 
-    @Override
-    protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        final int parentLeft = getPaddingLeft();
-        final int parentRight = r - l - getPaddingRight();
-        final int parentTop = getPaddingTop();
-        final int parentBottom = b - t - getPaddingBottom();
+    private boolean isChildCenter = false;
 
-        int parentWidth = r - l;
+    /**
+     * The column count in grid mode, 0 means the columns are decided by the cell width.
+     */
+    private int gridColumns;
 
-        int childLeft = parentLeft;
-        int childTop = parentTop;
+    /**
+     * The cell width in grid mode, 0 means the cell width is decided by the column count.
+     */
+    private int gridCellWidth;
 
-        int rowMaxHeight = 0;
-        int oneLineCount = 0;
-        int height = 0;
+    /**
+     * The column count and the cell size resolved in the last grid measure pass.
+     */
+    private int mGridResolvedColumns;
+    private int mGridResolvedCellWidth;
+    private int mGridResolvedCellHeight;
 
-        final int count = getChildCount();
-        for (int i = 0; i < count; i++) {
-            final View child = getChildAt(i);
-            final int width = child.getMeasuredWidth();
-            height = child.getMeasuredHeight();
-            if (child.getVisibility() != GONE) {
-                if (childLeft + width > parentRight) { // Next line
+    /**
+     * The tags of the single row mode, a copy of the list set, null when not in single row mode.
+     */
+    private List<String> mStripTags;
 
-                    if (isChildCenter) {
-                        // 将已经加载出来的几个按钮水平居中显示出来
-                        adjustLine(oneLineCount, i, parentWidth - (childLeft - parentLeft - horizontalSpacing), childTop, childTop + height);
-                    }
-                    oneLineCount = 0;
-                    childLeft = parentLeft;
-                    childTop += rowMaxHeight + verticalSpacing;
-                    rowMaxHeight = height;
-                } else {
-                    rowMaxHeight = Math.max(rowMaxHeight, height);
-                }
-                child.layout(childLeft, childTop, childLeft + width, childTop + height);
+    /**
+     * The checked state of every tag in single row mode.
+     */
+    private boolean[] mStripChecked;
 
-                childLeft += width + horizontalSpacing;
-                oneLineCount++;
-            }
-        }
+    /**
+     * The x offsets of every tag in single row mode.
+     */
+    private TagStripOffsets mStripOffsets;
 
-        if (isChildCenter) {
-            adjustLine(oneLineCount, count, parentWidth - (childLeft - parentLeft - horizontalSpacing), childTop, childTop + height);
-        }
+    /**
+     * The paint the tag texts are measured with in single row mode.
+     */
+    private TextPaint mStripPaint;
 
-    }
+    /**
+     * The height of the row in single row mode.
+     */
+    private int mStripRowHeight;
 
     /**
-     * @param lineCount 一行子view的个数
-     * @param i         在所有的子view中，第i个的时候超出了行宽，需要换行
+     * The index of the tag bound to the first child in single row mode.
      */
-    private void adjustLine(int lineCount, int i, int childWidth, int top, int bottom) {
-        int totalLeft = childWidth / 2; // 填充view距离左侧间距
-        for (int lineNum = (i - lineCount); lineNum < i; lineNum++) {
-            View lineChildView = getChildAt(lineNum);
-            int totalRight = totalLeft + lineChildView.getMeasuredWidth();
-            lineChildView.layout(totalLeft, top, totalRight, bottom);
-            totalLeft += lineChildView.getMeasuredWidth() + horizontalSpacing;
-        }
-    }
+    private int mStripFirstBound;
 
-    @Override
-    public Parcelable onSaveInstanceState() {
-        Parcelable superState = super.onSaveInstanceState();
-        SavedState ss = new SavedState(superState);
-        ss.tags = getTags();
-        ss.checkedTagsCount = getCheckedTagCount();
-        ss.checkedTagsIndex = getCheckedTagsIndex();
-        return ss;
-    }
+    /**
+     * The detached tag views ready to be bound again in single row mode.
+     */
+    private final List<TagView> mStripRecycledTags = new ArrayList<>();
 
-    @Override
-    public void onRestoreInstanceState(Parcelable state) {
-        if (!(state instanceof SavedState)) {
-            super.onRestoreInstanceState(state);
-            return;
-        }
+    private OverScroller mStripScroller;
+    private VelocityTracker mStripVelocityTracker;
+    private int mTouchSlop;
+    private int mMinFlingVelocity;
+    private int mMaxFlingVelocity;
+    private float mStripLastMotionX;
+    private boolean mStripBeingDragged;
 
-        SavedState ss = (SavedState) state;
-        super.onRestoreInstanceState(ss.getSuperState());
+    /**
+     * The vocabulary the INPUT tag text is completed against, null means no suggestion.
+     */
+    private TagTrie mSuggestionSource;
 
-        setTags(ss.tags);
+    /**
+     * The max SUGGESTION tags shown at once, default is 5.
+     */
+    private int maxSuggestionCount = 5;
 
-        String[] checkedTagsIndex = ss.checkedTagsIndex;
-        for (int i = 0; i < checkedTagsIndex.length; i++) {
-            String indexString = checkedTagsIndex[i];
-            int index = Integer.parseInt(indexString);
-            TagView checkedTagView = getTagAt(index);
-            if (checkedTagView != null) {
-                checkedTagView.setChecked(true);
-            }
-        }
-    }
+    /**
+     * The INPUT tag, or null if not exists.
+     */
+    private TagView mInputTag;
 
     /**
-     * Return the last NORMAL state tag view in this group.
-     *
-     * @return the last NORMAL state tag view or null if not exists
+     * Increased on every INPUT tag text change, used to drop the results of stale lookups.
      */
-    protected TagView getLastNormalTagView() {
-        final int lastNormalTagIndex = getChildCount() - 1;
-        TagView lastNormalTagView = getTagAt(lastNormalTagIndex);
-        return lastNormalTagView;
-    }
+    private int mSuggestionGeneration;
 
     /**
-     * Returns the tag array in group, except the INPUT tag.
-     *
-     * @return the tag array.
+     * Posted with a delay on every INPUT tag text change to start the lookup.
      */
-    public String[] getTags() {
-        final int count = getChildCount();
-        final List<String> tagList = new ArrayList<>();
-        for (int i = 0; i < count; i++) {
-            final TagView tagView = getTagAt(i);
-            if (tagView.mState == TagView.STATE_NORMAL) {
-                tagList.add(tagView.getText().toString());
-            }
+    private final Runnable mSuggestionLookup = new Runnable() {
+        @Override
+        public void run() {
+            lookupSuggestions();
         }
+    };
 
-        return tagList.toArray(new String[tagList.size()]);
-    }
-
-    public void setChildCenter(boolean childCenter) {
-        isChildCenter = childCenter;
-    }
-
-    public void setMaxChooseNum(int maxChooseCount) {
-        this.maxChooseCount = maxChooseCount;
-    }
+    /**
+     * The changes posted from any thread, waiting for the next frame.
+     */
+    private final ConcurrentLinkedQueue<PendingChange> mPendingChanges = new ConcurrentLinkedQueue<>();
 
     /**
-     * @see #setTags(String...)
+     * Whether a frame callback is scheduled to apply the pending changes.
      */
-    public void setTags(List<String> tagList) {
-        setTags(tagList.toArray(new String[tagList.size()]));
-    }
+    private final AtomicBoolean mPendingFrameScheduled = new AtomicBoolean();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     /**
-     * Set the tags. It will remove all previous tags first.
-     *
-     * @param tags the tag list to set.
+     * Applies all the pending changes in one batch on the next frame.
      */
-    public void setTags(String... tags) {
-        removeAllViews();
-        for (final String tag : tags) {
-            appendTag(tag);
+    private final Choreographer.FrameCallback mApplyPendingChanges = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            applyPendingChanges();
         }
-    }
+    };
+
+    private final Runnable mSchedulePendingChanges = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(mApplyPendingChanges);
+        }
+    };
 
     /**
-     * Returns the tag view at the specified position in the group.
-     *
-     * @param index the position at which to get the tag view from.
-     * @return the tag view at the specified position or null if the position
-     * does not exists within this group.
+     * The precomputed layout adopted by the group, null to measure and lay out the tags.
      */
-    protected TagView getTagAt(int index) {
-        return (TagView) getChildAt(index);
-    }
+    private TagLayout mAdoptedLayout;
 
     /**
-     * Returns the checked tag view in the group.
-     *
-     * @return the checked tag view or null if not exists.
+     * Whether the saved state carries the measured tag sizes.
      */
-    private int getCheckedTagCount() {
+    private boolean saveTagSizesEnabled;
 
-        int checkedCount = 0;
-        final int count = getChildCount();
-        for (int i = 0; i < count; i++) {
-            final TagView tag = getTagAt(i);
-            if (tag.isChecked) {
-                checkedCount = checkedCount + 1;
-            }
-        }
-        return checkedCount;
-    }
+    /**
+     * The restored tag sizes of the other orientation, carried over to the next saved state
+     * until the tags change.
+     */
+    private TagSizeSnapshot mOtherOrientationSizes;
 
+    /**
+     * The widest restored tag and the width inside the padding it was measured in, while the
+     * tags are preset with restored sizes, -1 otherwise.
+     */
+    private int mRestoredMaxTagWidth = -1;
+    private int mRestoredAvailableWidth;
 
-    private String[] getCheckedTagsIndex() {
+    /**
+     * The rows of the last layout pass, used for hit testing and position queries.
+     */
+    private final TagRowIndex mRowIndex = new TagRowIndex();
 
-        final int count = getChildCount();
-        final List<String> tagList = new ArrayList<>();
-        for (int i = 0; i < count; i++) {
-            final TagView tagView = getTagAt(i);
-            if (tagView.isChecked) {
-                tagList.add(i + "");
-            }
+    /**
+     * The children as measured tags of the wrap mode, placed where {@link TagWrapLayout} lays
+     * them out.
+     */
+    private final TagWrapLayout.Tags mWrapTags = new TagWrapLayout.Tags() {
+        @Override
+        public int getCount() {
+            return getChildCount();
         }
 
-        return tagList.toArray(new String[tagList.size()]);
-    }
+        @Override
+        public int getWidth(int index) {
+            return getChildAt(index).getMeasuredWidth();
+        }
 
+        @Override
+        public int getHeight(int index) {
+            return getChildAt(index).getMeasuredHeight();
+        }
 
-    public String[] getCheckedTags() {
+        @Override
+        public boolean isGone(int index) {
+            return getChildAt(index).getVisibility() == GONE;
+        }
 
-        final int count = getChildCount();
-        final List<String> tagList = new ArrayList<>();
-        for (int i = 0; i < count; i++) {
-            final TagView tagView = getTagAt(i);
-            if (tagView.isChecked) {
-                tagList.add(tagView.getText().toString());
-            }
+        @Override
+        public void place(int index, int left, int top) {
+            final View child = getChildAt(index);
+            child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
         }
+    };
 
-        return tagList.toArray(new String[tagList.size()]);
-    }
+    /**
+     * The size the wrap mode measured, reused by every measure pass.
+     */
+    private final int[] mWrapSize = new int[2];
 
+    /**
+     * Whether the unchanged tags are drawn from a cache instead of running their onDraw.
+     */
+    private boolean staticDrawCacheEnabled;
 
-//    protected TagView getCheckedTag() {
-//        final int checkedTagIndex = getCheckedTagIndex();
-//        if (checkedTagIndex != -1) {
-//            return getTagAt(checkedTagIndex);
-//        }
-//        return null;
-//    }
+    /**
+     * Whether the hardware layer of the group was set by the draw cache, and not by the app.
+     */
+    private boolean mDrawCacheLayer;
 
+    /**
+     * The number of tag draws served from the cache, and the number of tag draws which actually
+     * ran the tag's onDraw while the cache is enabled.
+     */
+    private int mDrawCacheHits;
+    private int mDrawCacheMisses;
 
     /**
-     * Register a callback to be invoked when this tag group is changed.
+     * The bytes of the tag bitmaps of the draw cache on a software canvas, at most
+     * {@link #MAX_SOFTWARE_DRAW_CACHE_BYTES}.
+     */
+    private int mSoftwareDrawCacheBytes;
+
+    /**
+     * Whether the tags are animated when inserted, removed or checked.
+     */
+    private boolean tagTransitionsEnabled;
+
+    /**
+     * True if the tag positions were recorded before a change, the tags are animated from them
+     * at the end of the next layout pass.
+     */
+    private boolean mTransitionPending;
+
+    /**
+     * Whether the NORMAL tags can be reordered by dragging them after a long press.
+     */
+    private boolean dragReorderEnabled;
+
+    /**
+     * The layout of the tags in their current order while a tag is dragged, null otherwise. The
+     * tags are moved from it, without any measure or layout pass.
+     */
+    private TagLayout mDragLayout;
+
+    /**
+     * The dragged tag and its index, kept until the dragged tag is dropped into its place.
+     */
+    private TagView mDragTag;
+    private int mDragIndex = -1;
+    private int mDragStartIndex;
+
+    /**
+     * The last down point, and the offset of the touch point in the dragged tag.
+     */
+    private float mLastDownX;
+    private float mLastDownY;
+    private float mDragOffsetX;
+    private float mDragOffsetY;
+
+    /**
+     * Listener used to dispatch tag change event.
+     */
+    private OnTagChangeListener mOnTagChangeListener;
+
+    /**
+     * Listener used to dispatch tag click event.
+     */
+    private OnTagClickListener mOnTagClickListener;
+
+    /**
+     * Listener used to dispatch checked tags change event.
+     */
+    private OnCheckedChangeListener mOnCheckedChangeListener;
+
+    /**
+     * Listener used to dispatch tag move event.
+     */
+    private OnTagMoveListener mOnTagMoveListener;
+
+    /**
+     * The journal recording every check and uncheck, or null.
+     */
+    private TagSelectionJournal mSelectionJournal;
+
+    /**
+     * The measurer of the tag texts, or null to let the tag views measure their text.
+     */
+    private TagMeasurer mTagMeasurer;
+
+    /**
+     * Listener used to dispatch the tag measure mismatches, non null in verification mode.
+     */
+    private OnMeasureMismatchListener mOnMeasureMismatchListener;
+
+    /**
+     * The font metrics of the tag text, reused by every fast tag measure.
+     */
+    private final Paint.FontMetricsInt mTagFontMetrics = new Paint.FontMetricsInt();
+
+    /**
+     * Listener used to handle tag click event.
+     */
+    private InternalTagClickListener mInternalTagClickListener = new InternalTagClickListener();
+
+    public TagGroupNoEdit(Context context) {
+        this(context, (AttributeSet) null);
+    }
+
+    public TagGroupNoEdit(Context context, AttributeSet attrs) {
+        this(context, attrs, R.attr.tagGroupStyle);
+    }
+
+    public TagGroupNoEdit(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        applyStyle(TagStyle.obtain(context, attrs, defStyleAttr, R.style.TagGroupNoEdit));
+    }
+
+    private TagGroupNoEdit(Context context, TagStyle style) {
+        super(context);
+        applyStyle(style);
+    }
+
+    private void applyStyle(TagStyle style) {
+        borderColor = style.borderColor;
+        textColor = style.textColor;
+        backgroundColor = style.backgroundColor;
+        dashBorderColor = style.dashBorderColor;
+        inputHintColor = style.inputHintColor;
+        inputTextColor = style.inputTextColor;
+        checkedBorderColor = style.checkedBorderColor;
+        checkedTextColor = style.checkedTextColor;
+        checkedMarkerColor = style.checkedMarkerColor;
+        checkedBackgroundColor = style.checkedBackgroundColor;
+        pressedBackgroundColor = style.pressedBackgroundColor;
+        borderStrokeWidth = style.borderStrokeWidth;
+        textSize = style.textSize;
+        horizontalSpacing = style.horizontalSpacing;
+        verticalSpacing = style.verticalSpacing;
+        horizontalPadding = style.horizontalPadding;
+        verticalPadding = style.verticalPadding;
+        maxTagWidth = style.maxTagWidth;
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // The font scale or the density may have changed.
+        TagStyle.clearCache();
+    }
+
+    /**
+     * The wrap mode is measured and laid out by {@link TagWrapLayout}, which the :tagcore
+     * TagLayoutFuzzTest runs as the reference TagLineBreaker is checked against.
+     */
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+        final int heightMode = MeasureSpec.getMode(heightMeasureSpec);
+        int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+        final int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+
+        if (mStripTags != null) {
+            measureStrip(widthMode, widthSize, heightMode, heightSize);
+            return;
+        }
+        if (isGridMode()) {
+            measureGrid(widthMode, widthSize, heightMode, heightSize);
+            return;
+        }
+
+        if (mAdoptedLayout != null && !isAdoptedLayoutValid(widthSize)) {
+            dropAdoptedLayout();
+        }
+        if (mRestoredMaxTagWidth >= 0 && !areRestoredSizesValid(widthMode, widthSize)) {
+            clearRestoredSizes();
+        }
+
+        // The tags of an adopted layout have a preset size, no text is measured.
+        measureChildren(widthMeasureSpec, heightMeasureSpec);
+
+        if (mAdoptedLayout != null) {
+            setMeasuredDimension(widthMode == MeasureSpec.EXACTLY ? widthSize : mAdoptedLayout.getMeasuredWidth(),
+                    heightMode == MeasureSpec.EXACTLY ? heightSize : mAdoptedLayout.getMeasuredHeight());
+            return;
+        }
+
+        TagWrapLayout.measure(mWrapTags, widthSize, horizontalSpacing, verticalSpacing,
+                getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom(), mWrapSize);
+        setMeasuredDimension(widthMode == MeasureSpec.EXACTLY ? widthSize : mWrapSize[0],
+                heightMode == MeasureSpec.EXACTLY ? heightSize : mWrapSize[1]);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (mStripTags != null) {
+            layoutStrip();
+            return;
+        }
+        if (isGridMode()) {
+            layoutGrid();
+            buildRowIndex();
+            runTagTransition();
+            return;
+        }
+        if (mAdoptedLayout != null && mAdoptedLayout.getWidth() == r - l) {
+            final int count = getChildCount();
+            for (int i = 0; i < count; i++) {
+                final View child = getChildAt(i);
+                if (child.getVisibility() != GONE) {
+                    final int left = mAdoptedLayout.getTagLeft(i);
+                    final int top = mAdoptedLayout.getTagTop(i);
+                    child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+                }
+            }
+            buildRowIndex();
+            runTagTransition();
+            return;
+        }
+
+        TagWrapLayout.layout(mWrapTags, r - l, horizontalSpacing, verticalSpacing,
+                getPaddingLeft(), getPaddingTop(), getPaddingRight(), isChildCenter);
+        buildRowIndex();
+        runTagTransition();
+    }
+
+    private boolean isGridMode() {
+        return gridColumns > 0 || gridCellWidth > 0;
+    }
+
+    /**
+     * Measure in grid mode: every tag gets the same cell size, so all the tags are measured with
+     * the same exact spec and the group size follows from the tag count. The tags are kept on a
+     * single line by {@link #onGridModeChanged()} and the tag view ellipsizes its text to the
+     * cell width, so that spec holds for all of them.
+     */
+    private void measureGrid(int widthMode, int widthSize, int heightMode, int heightSize) {
+        final int available = widthSize - getPaddingLeft() - getPaddingRight();
+        final int columns;
+        final int cellWidth;
+        if (gridColumns > 0) {
+            columns = gridColumns;
+            cellWidth = gridCellWidth > 0 ? gridCellWidth
+                    : Math.max(0, (available - (columns - 1) * horizontalSpacing) / columns);
+        } else {
+            columns = Math.max(1, (available + horizontalSpacing) / (gridCellWidth + horizontalSpacing));
+            cellWidth = gridCellWidth;
+        }
+
+        final int count = getChildCount();
+        int visibleCount = 0;
+        int cellHeight = 0;
+        final int cellWidthSpec = MeasureSpec.makeMeasureSpec(cellWidth, MeasureSpec.EXACTLY);
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            if (child.getVisibility() == GONE) {
+                continue;
+            }
+            if (cellHeight == 0) {
+                // The first tag decides the cell height, all tags share the text size and padding.
+                child.measure(cellWidthSpec, MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+                cellHeight = child.getMeasuredHeight();
+            }
+            child.measure(cellWidthSpec, MeasureSpec.makeMeasureSpec(cellHeight, MeasureSpec.EXACTLY));
+            visibleCount++;
+        }
+
+        mGridResolvedColumns = columns;
+        mGridResolvedCellWidth = cellWidth;
+        mGridResolvedCellHeight = cellHeight;
+
+        final int rows = (visibleCount + columns - 1) / columns;
+        final int width = getPaddingLeft() + getPaddingRight()
+                + columns * cellWidth + (columns - 1) * horizontalSpacing;
+        final int height = getPaddingTop() + getPaddingBottom()
+                + (rows > 0 ? rows * cellHeight + (rows - 1) * verticalSpacing : 0);
+        setMeasuredDimension(widthMode == MeasureSpec.EXACTLY ? widthSize : width,
+                heightMode == MeasureSpec.EXACTLY ? heightSize : height);
+    }
+
+    /**
+     * Layout in grid mode, the position of a tag is computed from its index only. When the child
+     * center is enabled, the incomplete last row is centered.
+     */
+    private void layoutGrid() {
+        final int columns = mGridResolvedColumns;
+        final int cellWidth = mGridResolvedCellWidth;
+        final int cellHeight = mGridResolvedCellHeight;
+        final int count = getChildCount();
+
+        int visibleCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (getChildAt(i).getVisibility() != GONE) {
+                visibleCount++;
+            }
+        }
+        final int lastRowStart = (visibleCount - 1) / columns * columns;
+        final int lastRowOffset = isChildCenter
+                ? (columns - (visibleCount - lastRowStart)) * (cellWidth + horizontalSpacing) / 2 : 0;
+
+        int slot = 0;
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            if (child.getVisibility() == GONE) {
+                continue;
+            }
+            final int left = getPaddingLeft() + slot % columns * (cellWidth + horizontalSpacing)
+                    + (slot >= lastRowStart ? lastRowOffset : 0);
+            final int top = getPaddingTop() + slot / columns * (cellHeight + verticalSpacing);
+            child.layout(left, top, left + cellWidth, top + cellHeight);
+            slot++;
+        }
+    }
+
+    /**
+     * Measure in single row mode, the row width is known from the cached tag widths.
+     */
+    private void measureStrip(int widthMode, int widthSize, int heightMode, int heightSize) {
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            final int index = mStripFirstBound + i;
+            getChildAt(i).measure(MeasureSpec.makeMeasureSpec(mStripOffsets.getWidth(index), MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(mStripRowHeight, MeasureSpec.EXACTLY));
+        }
+
+        int width = mStripOffsets.getContentWidth() + getPaddingLeft() + getPaddingRight();
+        if (widthMode == MeasureSpec.EXACTLY || (widthMode == MeasureSpec.AT_MOST && width > widthSize)) {
+            width = widthSize;
+        }
+        final int height = mStripRowHeight + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(width, heightMode == MeasureSpec.EXACTLY ? heightSize : height);
+    }
+
+    /**
+     * Layout in single row mode: lay the bound tags out at their offsets, then bind the tags
+     * entering the window for the current width.
+     */
+    private void layoutStrip() {
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            layoutStripChild(getChildAt(i), mStripFirstBound + i);
+        }
+        scrollTo(Math.min(getScrollX(), getMaxStripScrollX()), 0);
+        updateStripWindow();
+    }
+
+    private void layoutStripChild(View child, int index) {
+        final int left = getPaddingLeft() + mStripOffsets.getLeft(index);
+        final int top = getPaddingTop();
+        child.layout(left, top, left + mStripOffsets.getWidth(index), top + mStripRowHeight);
+    }
+
+    private int getMaxStripScrollX() {
+        return Math.max(0, mStripOffsets.getContentWidth() + getPaddingLeft() + getPaddingRight() - getWidth());
+    }
+
+    /**
+     * Make the children exactly the tags intersecting the visible window plus a prefetch margin
+     * of half the width on both sides. The tags leaving the window are recycled, and the tags
+     * entering it are bound, measured and laid out directly, without requesting a layout.
+     */
+    private void updateStripWindow() {
+        if (mStripTags == null || getWidth() == 0) {
+            return;
+        }
+        final int margin = getWidth() / 2;
+        final int windowLeft = getScrollX() - getPaddingLeft() - margin;
+        final int windowRight = getScrollX() - getPaddingLeft() + getWidth() + margin;
+        final int first = mStripOffsets.firstEndingAfter(windowLeft);
+        final int last = mStripOffsets.lastStartingBefore(windowRight);
+
+        int count = getChildCount();
+        if (count > 0 && (first > last || first > mStripFirstBound + count - 1 || last < mStripFirstBound)) {
+            // Jumped to a disjoint window.
+            while (count > 0) {
+                recycleStripChild(--count);
+            }
+        }
+        while (count > 0 && mStripFirstBound < first) {
+            recycleStripChild(0);
+            mStripFirstBound++;
+            count--;
+        }
+        while (count > 0 && mStripFirstBound + count - 1 > last) {
+            recycleStripChild(--count);
+        }
+        if (first > last) {
+            return;
+        }
+
+        if (count == 0) {
+            mStripFirstBound = first;
+            bindStripChild(first, 0);
+            count++;
+        }
+        while (mStripFirstBound > first) {
+            mStripFirstBound--;
+            bindStripChild(mStripFirstBound, 0);
+            count++;
+        }
+        while (mStripFirstBound + count - 1 < last) {
+            bindStripChild(mStripFirstBound + count, count);
+            count++;
+        }
+    }
+
+    private void bindStripChild(int index, int childIndex) {
+        final String text = mStripTags.get(index);
+        final TagView tag;
+        if (mStripRecycledTags.isEmpty()) {
+            tag = new TagView(getContext(), TagView.STATE_NORMAL, text);
+            tag.setOnClickListener(mInternalTagClickListener);
+        } else {
+            tag = mStripRecycledTags.remove(mStripRecycledTags.size() - 1);
+            if (!text.equals(tag.getTagText().toString())) {
+                tag.setTagText(text);
+            }
+        }
+        tag.mStripIndex = index;
+        tag.bindChecked(mStripChecked[index]);
+        addViewInLayout(tag, childIndex, tag.getLayoutParams(), true);
+        tag.measure(MeasureSpec.makeMeasureSpec(mStripOffsets.getWidth(index), MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(mStripRowHeight, MeasureSpec.EXACTLY));
+        layoutStripChild(tag, index);
+    }
+
+    private void recycleStripChild(int childIndex) {
+        final TagView tag = getTagAt(childIndex);
+        removeViewInLayout(tag);
+        tag.mStripIndex = -1;
+        mStripRecycledTags.add(tag);
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        updateStripWindow();
+    }
+
+    @Override
+    public void computeScroll() {
+        if (mStripScroller != null && mStripScroller.computeScrollOffset()) {
+            scrollTo(mStripScroller.getCurrX(), 0);
+            postInvalidateOnAnimation();
+        }
+    }
+
+    @Override
+    protected int computeHorizontalScrollRange() {
+        if (mStripTags == null) {
+            return super.computeHorizontalScrollRange();
+        }
+        return mStripOffsets.getContentWidth() + getPaddingLeft() + getPaddingRight();
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        if (ev.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            // Where a long press, hence a drag, may start.
+            mLastDownX = ev.getX();
+            mLastDownY = ev.getY();
+        }
+        if (mDragLayout != null) {
+            // The intercepted event is not passed to onTouchEvent, only the next ones are. It is
+            // the UP ending the drag when the finger lifts right after the long press.
+            onDragTouchEvent(ev);
+            return true;
+        }
+        if (mStripTags == null) {
+            return super.onInterceptTouchEvent(ev);
+        }
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mStripLastMotionX = ev.getX();
+                // A touch stops the fling, and is a drag if the row is still moving.
+                mStripBeingDragged = !mStripScroller.isFinished();
+                mStripScroller.abortAnimation();
+                trackStripVelocity(ev);
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (Math.abs(ev.getX() - mStripLastMotionX) > mTouchSlop) {
+                    mStripBeingDragged = true;
+                    mStripLastMotionX = ev.getX();
+                    getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                trackStripVelocity(ev);
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mStripBeingDragged = false;
+                break;
+        }
+        return mStripBeingDragged;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mDragLayout != null) {
+            onDragTouchEvent(event);
+            return true;
+        }
+        if (mStripTags == null) {
+            return super.onTouchEvent(event);
+        }
+        trackStripVelocity(event);
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mStripLastMotionX = event.getX();
+                mStripScroller.abortAnimation();
+                break;
+            case MotionEvent.ACTION_MOVE: {
+                final float deltaX = mStripLastMotionX - event.getX();
+                if (!mStripBeingDragged && Math.abs(deltaX) > mTouchSlop) {
+                    mStripBeingDragged = true;
+                    getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                if (mStripBeingDragged) {
+                    mStripLastMotionX = event.getX();
+                    final int scrollX = Math.max(0, Math.min(getMaxStripScrollX(), getScrollX() + (int) deltaX));
+                    scrollTo(scrollX, 0);
+                }
+                break;
+            }
+            case MotionEvent.ACTION_UP:
+                if (mStripBeingDragged) {
+                    mStripVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+                    final int velocity = (int) mStripVelocityTracker.getXVelocity();
+                    if (Math.abs(velocity) > mMinFlingVelocity) {
+                        mStripScroller.fling(getScrollX(), 0, -velocity, 0, 0, getMaxStripScrollX(), 0, 0);
+                        postInvalidateOnAnimation();
+                    }
+                }
+                // Fall through.
+            case MotionEvent.ACTION_CANCEL:
+                mStripBeingDragged = false;
+                if (mStripVelocityTracker != null) {
+                    mStripVelocityTracker.recycle();
+                    mStripVelocityTracker = null;
+                }
+                break;
+        }
+        return true;
+    }
+
+    private void trackStripVelocity(MotionEvent event) {
+        if (mStripVelocityTracker == null) {
+            mStripVelocityTracker = VelocityTracker.obtain();
+        } else if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            mStripVelocityTracker.clear();
+        }
+        mStripVelocityTracker.addMovement(event);
+    }
+
+    /**
+     * Adopt a layout precomputed, e.g. by a backend, for the current tags. While the width, the
+     * paddings, the spacings, the centering and the tag style match the layout, the tags are
+     * sized and placed from it without measuring any text. The layout is dropped as soon as it
+     * does not match any more. Only tags in the default typeface adopt a layout, the style key
+     * does not tell the other typefaces apart.
+     *
+     * @param layout the layout of the current tags, or null to measure the tags again.
+     */
+    public void adoptLayout(TagLayout layout) {
+        dropAdoptedLayout();
+        mRestoredMaxTagWidth = -1;
+        if (layout != null && layout.getTagCount() == getChildCount() && hasDefaultTypefaces()) {
+            mAdoptedLayout = layout;
+            for (int i = 0; i < layout.getTagCount(); i++) {
+                getTagAt(i).setPresetSize(layout.getTagWidth(i), layout.getTagHeight(i));
+            }
+        }
+        requestLayout();
+    }
+
+    /**
+     * Returns the key of the tag style of this group, a precomputed layout must be measured
+     * with the same key to be adopted. The key is the one of the default typeface, the only
+     * one the tags may have to adopt a layout or restore their sizes.
+     *
+     * @see TagLayout#styleKey(float, int, int, int, String)
+     */
+    public int getLayoutStyleKey() {
+        return TagLayout.styleKey(textSize, horizontalPadding, verticalPadding, maxTagWidth, null);
+    }
+
+    /**
+     * Returns true if every tag has the default typeface, the one of {@link #getLayoutStyleKey()}.
+     */
+    private boolean hasDefaultTypefaces() {
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            final Typeface typeface = getTagAt(i).getTypeface();
+            if (typeface != null && typeface != Typeface.DEFAULT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAdoptedLayoutValid(int widthSize) {
+        final TagLayout layout = mAdoptedLayout;
+        if (layout.getWidth() != widthSize || layout.getTagCount() != getChildCount()
+                || layout.getPaddingLeft() != getPaddingLeft() || layout.getPaddingTop() != getPaddingTop()
+                || layout.getPaddingRight() != getPaddingRight() || layout.getPaddingBottom() != getPaddingBottom()
+                || layout.getHorizontalSpacing() != horizontalSpacing || layout.getVerticalSpacing() != verticalSpacing
+                || layout.isCenter() != isChildCenter || layout.getStyleKey() != getLayoutStyleKey()
+                || !hasDefaultTypefaces()) {
+            return false;
+        }
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            final TagView tag = getTagAt(i);
+            if ((tag.getVisibility() == GONE) != layout.isGone(i) || tag.mPresetWidth < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void dropAdoptedLayout() {
+        if (mAdoptedLayout == null) {
+            return;
+        }
+        mAdoptedLayout = null;
+        mRestoredMaxTagWidth = -1;
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            getTagAt(i).setPresetSize(-1, -1);
+        }
+    }
+
+    /**
+     * Index the rows from the final child positions of this layout pass.
+     */
+    private void buildRowIndex() {
+        final int count = getChildCount();
+        mRowIndex.begin(count);
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            if (child.getVisibility() != GONE) {
+                mRowIndex.add(i, child.getLeft(), child.getTop(), child.getRight(), child.getBottom());
+            }
+        }
+        mRowIndex.end();
+    }
+
+    /**
+     * Returns the index of the tag at the point, as of the last layout pass. The index is the
+     * child index of the tag, except in single row mode where it is the index of the tag in the
+     * list of {@link #setSingleRowTags(List)}, since the tags out of view have no child.
+     *
+     * @param x the x in this group's coordinates.
+     * @param y the y in this group's coordinates.
+     * @return the index of the tag or -1 if no tag at the point.
+     */
+    public int tagAt(int x, int y) {
+        if (mStripTags != null) {
+            final int top = getPaddingTop();
+            return y >= top && y < top + mStripRowHeight
+                    ? mStripOffsets.indexAt(x + getScrollX() - getPaddingLeft()) : -1;
+        }
+        return mRowIndex.childAt(x, y);
+    }
+
+    /**
+     * Returns the row of the tag, as of the last layout pass.
+     *
+     * @param index the index of the tag, like the one of {@link #tagAt(int, int)}.
+     * @return the row, starting at 0, or -1 if the tag is GONE or not laid out.
+     */
+    public int rowOf(int index) {
+        if (mStripTags != null) {
+            return index >= 0 && index < mStripTags.size() ? 0 : -1;
+        }
+        return mRowIndex.rowOf(index);
+    }
+
+    /**
+     * Returns the first tag intersecting the rect, as of the last layout pass.
+     *
+     * @param rect the rect in this group's coordinates, e.g. the visible part of the group.
+     * @return the index of the tag, like the one of {@link #tagAt(int, int)}, or -1 if no tag
+     * intersects the rect.
+     */
+    public int firstVisibleIndex(Rect rect) {
+        if (mStripTags != null) {
+            final int index = mStripOffsets.firstEndingAfter(rect.left + getScrollX() - getPaddingLeft());
+            return index <= mStripOffsets.lastStartingBefore(rect.right + getScrollX() - getPaddingLeft())
+                    ? index : -1;
+        }
+        return mRowIndex.firstVisible(rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+    @Override
+    public Parcelable onSaveInstanceState() {
+        Parcelable superState = super.onSaveInstanceState();
+        SavedState ss = new SavedState(superState);
+        ss.singleRow = mStripTags != null;
+        ss.tags = getTags();
+        ss.checkedTagsCount = getCheckedTagCount();
+        ss.checkedTagsIndex = getCheckedTagsIndex();
+        if (saveTagSizesEnabled) {
+            ss.tagSizes = snapshotTagSizes();
+            if (ss.tagSizes != null && mOtherOrientationSizes != null
+                    && mOtherOrientationSizes.orientation != ss.tagSizes.orientation) {
+                ss.otherTagSizes = mOtherOrientationSizes;
+            }
+        }
+        return ss;
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+
+        if (ss.singleRow) {
+            setSingleRowTags(Arrays.asList(ss.tags));
+            restoreCheckedTags(ss.checkedTagsIndex);
+            return;
+        }
+        setTags(ss.tags);
+        restoreCheckedTags(ss.checkedTagsIndex);
+
+        // Prefer the sizes of this orientation, and keep the other ones for the next rotation.
+        final int orientation = getResources().getConfiguration().orientation;
+        TagSizeSnapshot sizes = null;
+        mOtherOrientationSizes = null;
+        for (TagSizeSnapshot snapshot : new TagSizeSnapshot[]{ss.tagSizes, ss.otherTagSizes}) {
+            if (snapshot == null) {
+                continue;
+            }
+            if (snapshot.orientation == orientation) {
+                sizes = snapshot;
+            } else {
+                mOtherOrientationSizes = snapshot;
+            }
+        }
+        presetRestoredSizes(sizes != null ? sizes : mOtherOrientationSizes);
+    }
+
+    /**
+     * Check the tags of the saved indexes as they were, without recording them in the selection
+     * journal or fading them, then notify the checked change once.
+     */
+    private void restoreCheckedTags(String[] checkedTagsIndex) {
+        int restored = 0;
+        for (String indexString : checkedTagsIndex) {
+            final int index = Integer.parseInt(indexString);
+            if (mStripTags != null) {
+                if (index < mStripChecked.length && !mStripChecked[index]) {
+                    mStripChecked[index] = true;
+                    restored++;
+                    final int childIndex = index - mStripFirstBound;
+                    if (childIndex >= 0 && childIndex < getChildCount()) {
+                        getTagAt(childIndex).bindChecked(true);
+                    }
+                }
+                continue;
+            }
+            final TagView checkedTagView = getTagAt(index);
+            if (checkedTagView != null && !checkedTagView.isChecked) {
+                checkedTagView.bindChecked(true);
+                restored++;
+            }
+        }
+        mCheckedCount += restored;
+        dispatchCheckedChange(restored);
+    }
+
+    /**
+     * Save the measured tag sizes in the saved state, so a group restored with the same style,
+     * e.g. after a rotation, lays out its tags without measuring their text. The sizes are used
+     * as long as no tag may wrap in the new width, otherwise the tags are measured as usual.
+     *
+     * @param enabled true to save the tag sizes, false otherwise.
+     */
+    public void setSaveTagSizesEnabled(boolean enabled) {
+        saveTagSizesEnabled = enabled;
+    }
+
+    /**
+     * Returns the measured sizes of the NORMAL tags, in the order of {@link #getTags()}, or null
+     * if the tags are not measured in wrap mode.
+     */
+    private TagSizeSnapshot snapshotTagSizes() {
+        if (mStripTags != null || isGridMode() || getWidth() == 0 || isLayoutRequested()) {
+            return null;
+        }
+        final int count = getChildCount();
+        final int[] widths = new int[count];
+        final int[] heights = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            final TagView tag = getTagAt(i);
+            if (tag.mState == TagView.STATE_NORMAL) {
+                widths[size] = tag.getMeasuredWidth();
+                heights[size] = tag.getMeasuredHeight();
+                size++;
+            }
+        }
+        return new TagSizeSnapshot(getResources().getConfiguration().orientation,
+                getWidth() - getPaddingLeft() - getPaddingRight(), getLayoutStyleKey(),
+                getTagTextsHash(), Arrays.copyOf(widths, size), Arrays.copyOf(heights, size));
+    }
+
+    /**
+     * Returns a hash of the texts of the NORMAL tags in their order.
+     */
+    private int getTagTextsHash() {
+        int hash = 1;
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            final TagView tag = getTagAt(i);
+            if (tag.mState == TagView.STATE_NORMAL) {
+                hash = 31 * hash + tag.getTagText().toString().hashCode();
+            }
+        }
+        return hash;
+    }
+
+    private void presetRestoredSizes(TagSizeSnapshot sizes) {
+        // The sizes are only valid for the same tags in the same style.
+        if (sizes == null || sizes.styleKey != getLayoutStyleKey() || sizes.widths.length != getChildCount()
+                || sizes.textsHash != getTagTextsHash() || !hasDefaultTypefaces()) {
+            return;
+        }
+        int maxWidth = 0;
+        for (int i = 0; i < sizes.widths.length; i++) {
+            getTagAt(i).setPresetSize(sizes.widths[i], sizes.heights[i]);
+            maxWidth = Math.max(maxWidth, sizes.widths[i]);
+        }
+        mRestoredMaxTagWidth = maxWidth;
+        mRestoredAvailableWidth = sizes.availableWidth;
+    }
+
+    /**
+     * Returns true if the restored sizes are the ones the tags would be measured with: the
+     * width is the same, or no tag was as wide as the width it was measured in, which may have
+     * wrapped it, and no tag is wider than the new width.
+     */
+    private boolean areRestoredSizesValid(int widthMode, int widthSize) {
+        final int available = widthSize - getPaddingLeft() - getPaddingRight();
+        if (available == mRestoredAvailableWidth) {
+            return true;
+        }
+        return mRestoredMaxTagWidth < mRestoredAvailableWidth
+                && (widthMode == MeasureSpec.UNSPECIFIED || mRestoredMaxTagWidth <= available);
+    }
+
+    private void clearRestoredSizes() {
+        mRestoredMaxTagWidth = -1;
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            getTagAt(i).setPresetSize(-1, -1);
+        }
+    }
+
+    /**
+     * Return the last NORMAL state tag view in this group.
+     *
+     * @return the last NORMAL state tag view or null if not exists
+     */
+    protected TagView getLastNormalTagView() {
+        final int lastNormalTagIndex = getChildCount() - 1;
+        TagView lastNormalTagView = getTagAt(lastNormalTagIndex);
+        return lastNormalTagView;
+    }
+
+    /**
+     * Returns the tag array in group, except the INPUT tag.
+     *
+     * @return the tag array.
+     */
+    public String[] getTags() {
+        if (mStripTags != null) {
+            return mStripTags.toArray(new String[mStripTags.size()]);
+        }
+        final int count = getChildCount();
+        final List<String> tagList = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final TagView tagView = getTagAt(i);
+            if (tagView.mState == TagView.STATE_NORMAL) {
+                tagList.add(tagView.getTagText().toString());
+            }
+        }
+
+        return tagList.toArray(new String[tagList.size()]);
+    }
+
+    /**
+     * Cache the drawing of the tags, for tag groups which rarely change. On a hardware
+     * accelerated window the whole group is rendered into a hardware layer, which is composited
+     * as is until a tag changes and redraws it; the tags themselves draw as usual. The layer is
+     * only set if the group has no layer type, one set by the app is kept. On a software canvas
+     * every tag keeps an ARGB_8888 bitmap of its drawing until its state changes, 4 bytes per
+     * pixel of the tag; the bitmaps of a group are limited to
+     * {@link #MAX_SOFTWARE_DRAW_CACHE_BYTES}, the tags beyond it are drawn without a cache.
+     *
+     * @param enabled true to enable the cache, false to disable it and release its memory.
+     */
+    public void setStaticDrawCacheEnabled(boolean enabled) {
+        if (staticDrawCacheEnabled == enabled) {
+            return;
+        }
+        staticDrawCacheEnabled = enabled;
+        updateDrawCacheLayer();
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            getTagAt(i).releaseDrawCache();
+        }
+        invalidate();
+    }
+
+    /**
+     * Put the group on a hardware layer while the draw cache is enabled on a hardware accelerated
+     * window, unless it already has a layer type, and only remove the layer set here.
+     */
+    private void updateDrawCacheLayer() {
+        if (staticDrawCacheEnabled && isHardwareAccelerated()) {
+            if (!mDrawCacheLayer && getLayerType() == LAYER_TYPE_NONE) {
+                setLayerType(LAYER_TYPE_HARDWARE, null);
+                mDrawCacheLayer = true;
+            }
+        } else if (mDrawCacheLayer) {
+            mDrawCacheLayer = false;
+            // Unless the app changed it since.
+            if (getLayerType() == LAYER_TYPE_HARDWARE) {
+                setLayerType(LAYER_TYPE_NONE, null);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tag draws served from the draw cache since the last reset.
+     */
+    public int getDrawCacheHitCount() {
+        return mDrawCacheHits;
+    }
+
+    /**
+     * Returns the number of tag draws which recorded the tag again since the last reset.
+     */
+    public int getDrawCacheMissCount() {
+        return mDrawCacheMisses;
+    }
+
+    public void resetDrawCacheStats() {
+        mDrawCacheHits = 0;
+        mDrawCacheMisses = 0;
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if (staticDrawCacheEnabled && canvas.isHardwareAccelerated() && !((TagView) child).mDrawDirty) {
+            // The renderer reuses the display list of a tag which did not change, it is only counted.
+            mDrawCacheHits++;
+        }
+        return super.drawChild(canvas, child, drawingTime);
+    }
+
+    public void setChildCenter(boolean childCenter) {
+        isChildCenter = childCenter;
+    }
+
+    /**
+     * Animate the tags when tags are inserted, removed or checked: the tags pushed by an insert
+     * or a remove slide to their new place, inserted tags fade in, removed tags fade out and
+     * checked tags fade into their new state. The new places come from the single layout pass of
+     * the change, and the tags are only animated with their translation and alpha, so the
+     * animations run no measure nor layout pass.
+     *
+     * @param enabled true to animate the tags, false otherwise.
+     */
+    public void setTagTransitionsEnabled(boolean enabled) {
+        tagTransitionsEnabled = enabled;
+        if (!enabled) {
+            mTransitionPending = false;
+        }
+    }
+
+    private boolean canRunTagTransition() {
+        // Nothing to animate from before the first layout, or while a tag is dragged.
+        return tagTransitionsEnabled && getWidth() > 0 && mStripTags == null && mDragLayout == null;
+    }
+
+    /**
+     * Record where the tags are drawn before a change of the tags, unless already recorded for
+     * a change of the same layout pass.
+     */
+    private void beginTagTransition() {
+        if (!canRunTagTransition() || mTransitionPending) {
+            return;
+        }
+        mTransitionPending = true;
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            final TagView tag = getTagAt(i);
+            tag.mTransitionLeft = tag.getLeft() + tag.getTranslationX();
+            tag.mTransitionTop = tag.getTop() + tag.getTranslationY();
+            tag.mHasTransitionStart = tag.getVisibility() != GONE;
+        }
+    }
+
+    /**
+     * Slide the tags from their recorded place to the one of this layout pass, and fade in the
+     * tags inserted since.
+     */
+    private void runTagTransition() {
+        if (!mTransitionPending) {
+            return;
+        }
+        mTransitionPending = false;
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            final TagView tag = getTagAt(i);
+            if (tag.getVisibility() == GONE) {
+                tag.mHasTransitionStart = false;
+                continue;
+            }
+            if (tag.mHasTransitionStart) {
+                tag.mHasTransitionStart = false;
+                final float dx = tag.mTransitionLeft - tag.getLeft();
+                final float dy = tag.mTransitionTop - tag.getTop();
+                if (dx != 0 || dy != 0) {
+                    tag.setTranslationX(dx);
+                    tag.setTranslationY(dy);
+                    tag.animate().translationX(0).translationY(0).setDuration(TRANSITION_DURATION);
+                }
+            } else {
+                tag.setAlpha(0);
+                tag.animate().alpha(1).setDuration(TRANSITION_DURATION).withLayer();
+            }
+        }
+    }
+
+    /**
+     * Keep drawing the removed tag while it fades out, the tag is no child any more.
+     */
+    private void fadeOutRemovedTag(final TagView tag) {
+        startViewTransition(tag);
+        tag.animate().alpha(0).setDuration(TRANSITION_DURATION).withLayer()
+                .withEndAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        endViewTransition(tag);
+                    }
+                });
+    }
+
+    /**
+     * Let the user reorder the NORMAL tags by dragging them after a long press. Only the tags
+     * around the moved tag are reflowed, with their measured sizes, and slide to their new place;
+     * the group is only laid out again if it gains or loses a row. Not supported in grid or
+     * single row mode.
+     *
+     * @param enabled true to enable the drag, false otherwise.
+     */
+    public void setDragReorderEnabled(boolean enabled) {
+        dragReorderEnabled = enabled;
+        if (!enabled && mDragLayout != null) {
+            endDrag();
+        }
+    }
+
+    /**
+     * Start dragging the tag, if the drag is enabled.
+     *
+     * @return true if the drag started.
+     */
+    private boolean startDrag(TagView tag) {
+        if (!dragReorderEnabled || mDragLayout != null || mDragTag != null
+                || mStripTags != null || isGridMode()) {
+            return false;
+        }
+        final int count = getChildCount();
+        final int[] widths = new int[count];
+        final int[] heights = new int[count];
+        final boolean[] gone = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            widths[i] = child.getMeasuredWidth();
+            heights[i] = child.getMeasuredHeight();
+            gone[i] = child.getVisibility() == GONE;
+        }
+        // The same layout as onLayout, from the sizes already measured.
+        mDragLayout = new TagLineBreaker()
+                .setSpacing(horizontalSpacing, verticalSpacing)
+                .setPadding(getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom())
+                .setCenter(isChildCenter)
+                .setStyleKey(getLayoutStyleKey())
+                .layout(widths, heights, gone, getWidth());
+        mDragTag = tag;
+        mDragIndex = indexOfChild(tag);
+        mDragStartIndex = mDragIndex;
+        mDragOffsetX = mLastDownX - tag.getLeft();
+        mDragOffsetY = mLastDownY - tag.getTop();
+
+        tag.isPressed = false;
+        tag.invalidatePaint();
+        tag.animate().scaleX(1.1f).scaleY(1.1f).setDuration(DRAG_ANIMATION_DURATION);
+        setChildrenDrawingOrderEnabled(true);
+        getParent().requestDisallowInterceptTouchEvent(true);
+        invalidate();
+        return true;
+    }
+
+    private void onDragTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE: {
+                final int x = (int) event.getX();
+                final int y = (int) event.getY();
+                final int target = mDragLayout.tagAt(x, y);
+                if (target >= 0 && target != mDragIndex && getTagAt(target).mState == TagView.STATE_NORMAL) {
+                    moveDragTag(target);
+                }
+                mDragTag.setTranslationX(x - mDragOffsetX - mDragTag.getLeft());
+                mDragTag.setTranslationY(y - mDragOffsetY - mDragTag.getTop());
+                break;
+            }
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                endDrag();
+                break;
+        }
+    }
+
+    /**
+     * Move the dragged tag to the index, and slide the tags it pushes to their new place.
+     */
+    private void moveDragTag(int to) {
+        final int from = mDragIndex;
+        final TagLayout previous = mDragLayout;
+        mDragLayout = TagLineBreaker.move(previous, from, to);
+        // Reorder the children without removing them, so nothing is measured again.
+        detachViewFromParent(mDragTag);
+        attachViewToParent(mDragTag, to, mDragTag.getLayoutParams());
+        mDragIndex = to;
+        mOtherOrientationSizes = null;
+
+        final int count = getChildCount();
+        for (int i = Math.min(from, to); i < count; i++) {
+            final View child = getChildAt(i);
+            final int left = mDragLayout.getTagLeft(i);
+            final int top = mDragLayout.getTagTop(i);
+            if (child.getVisibility() == GONE || (child.getLeft() == left && child.getTop() == top)) {
+                continue;
+            }
+            // Place the tag at once, and slide it from where it is drawn.
+            final float drawnLeft = child.getLeft() + child.getTranslationX();
+            final float drawnTop = child.getTop() + child.getTranslationY();
+            child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+            if (child != mDragTag) {
+                child.setTranslationX(drawnLeft - left);
+                child.setTranslationY(drawnTop - top);
+                child.animate().translationX(0).translationY(0).setDuration(DRAG_ANIMATION_DURATION);
+            }
+        }
+        buildRowIndex();
+
+        if (mAdoptedLayout != null) {
+            if (mAdoptedLayout.getWidth() == mDragLayout.getWidth()) {
+                mAdoptedLayout = mDragLayout;
+            } else {
+                dropAdoptedLayout();
+            }
+        }
+        if (mDragLayout.getMeasuredHeight() != previous.getMeasuredHeight()) {
+            // The group gains or loses a row.
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    /**
+     * Drop the dragged tag into its place.
+     */
+    private void endDrag() {
+        final TagView tag = mDragTag;
+        final int from = mDragStartIndex;
+        final int to = mDragIndex;
+        mDragLayout = null;
+        tag.animate().translationX(0).translationY(0).scaleX(1).scaleY(1)
+                .setDuration(DRAG_ANIMATION_DURATION)
+                .withEndAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mDragTag == tag && mDragLayout == null) {
+                            mDragTag = null;
+                            mDragIndex = -1;
+                            setChildrenDrawingOrderEnabled(false);
+                        }
+                    }
+                });
+        if (from != to && mOnTagMoveListener != null) {
+            mOnTagMoveListener.onTagMove(this, tag.getTagText().toString(), from, to);
+        }
+    }
+
+    /**
+     * Drop the dragged tag where it is before the children change, the drag layout and the
+     * dragged index only know the current children.
+     */
+    private void endDragForChange() {
+        if (mDragTag == null) {
+            return;
+        }
+        if (mDragLayout != null) {
+            endDrag();
+        }
+        // The drop animation goes on, but the drawing order follows the indexes.
+        mDragTag = null;
+        mDragIndex = -1;
+        setChildrenDrawingOrderEnabled(false);
+    }
+
+    @Override
+    protected int getChildDrawingOrder(int childCount, int i) {
+        // The dragged tag is drawn last, above the tags it passes over.
+        if (mDragTag == null || mDragIndex < 0 || mDragIndex >= childCount) {
+            return i;
+        }
+        if (i == childCount - 1) {
+            return mDragIndex;
+        }
+        return i < mDragIndex ? i : i + 1;
+    }
+
+    /**
+     * Lay the tags out in a grid of the column count, the cells share the available width.
+     *
+     * @param columns the column count, 0 to leave the grid mode unless a cell width is set.
+     */
+    public void setGridColumns(int columns) {
+        gridColumns = columns;
+        onGridModeChanged();
+    }
+
+    /**
+     * Lay the tags out in a grid of fixed width cells, as many columns as fit in the group.
+     *
+     * @param cellWidth the cell width in pixels, 0 to leave the grid mode unless a column count
+     *                  is set.
+     */
+    public void setGridCellWidth(int cellWidth) {
+        gridCellWidth = cellWidth;
+        onGridModeChanged();
+    }
+
+    private void onGridModeChanged() {
+        endDragForChange();
+        // On a single line in grid mode, so every tag fits the single cell height.
+        final boolean gridMode = isGridMode();
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            getTagAt(i).setGridCell(gridMode);
+        }
+        requestLayout();
+    }
+
+    public void setMaxChooseNum(int maxChooseCount) {
+        this.maxChooseCount = maxChooseCount;
+    }
+
+    /**
+     * Set the max tag width, the text of a longer tag is ellipsized at the end. The INPUT tag is
+     * never ellipsized.
+     *
+     * @param maxTagWidth the max width in pixels including the tag padding, 0 means no limit.
+     */
+    public void setMaxTagWidth(int maxTagWidth) {
+        if (this.maxTagWidth == maxTagWidth) {
+            return;
+        }
+        this.maxTagWidth = maxTagWidth;
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            final TagView tag = getTagAt(i);
+            if (tag.mState != TagView.STATE_INPUT) {
+                tag.setTagText(tag.getTagText());
+            }
+        }
+        if (mStripTags != null) {
+            // The bound tags are measured exactly at their offsets.
+            computeStripOffsets();
+            requestLayout();
+        }
+    }
+
+    /**
+     * Set the vocabulary used to suggest tags while typing into the INPUT tag. The lookups run
+     * off the UI thread, and the results are shown as SUGGESTION tags after the INPUT tag.
+     *
+     * @param source the vocabulary, or null to disable the suggestion.
+     */
+    public void setSuggestionSource(TagTrie source) {
+        mSuggestionSource = source;
+        if (source == null) {
+            mSuggestionGeneration++;
+            removeCallbacks(mSuggestionLookup);
+            applySuggestions(new ArrayList<String>(0));
+        }
+    }
+
+    /**
+     * Set the max number of SUGGESTION tags shown at once.
+     */
+    public void setMaxSuggestionNum(int maxSuggestionCount) {
+        this.maxSuggestionCount = maxSuggestionCount;
+    }
+
+    /**
+     * @see #setTags(String...)
+     */
+    public void setTags(List<String> tagList) {
+        setTags(tagList.toArray(new String[tagList.size()]));
+    }
+
+    /**
+     * Set the tags. It will remove all previous tags first.
+     *
+     * @param tags the tag list to set.
+     */
+    public void setTags(String... tags) {
+        exitStripMode();
+        endDragForChange();
+        mRestoredMaxTagWidth = -1;
+        mOtherOrientationSizes = null;
+        removeAllViews();
+        mAdoptedLayout = null;
+        mInputTag = null;
+        mCheckedCount = 0;
+        for (final String tag : tags) {
+            appendTag(tag);
+        }
+        // A new set of tags appears at once.
+        mTransitionPending = false;
+    }
+
+    /**
+     * Show the tags in a single row scrolling horizontally. Only the tags intersecting the
+     * visible window, plus a prefetch margin, have a tag view; the x offsets of all the tags
+     * are computed upfront from their text widths. It will remove all previous tags first,
+     * and {@link #setTags(String...)} leaves the single row mode.
+     * <p>
+     * The checked state is kept for every tag. The bulk check operations, and the tags appended,
+     * removed or checked with {@link #appendTag(CharSequence)} or the post methods, apply to all
+     * the tags, in view or not.
+     * </p>
+     *
+     * @param tags the tags to show, e.g. {@link TagVocabulary#asList()}, the list is copied.
+     */
+    public void setSingleRowTags(List<String> tags) {
+        endDragForChange();
+        mRestoredMaxTagWidth = -1;
+        mOtherOrientationSizes = null;
+        removeAllViews();
+        mAdoptedLayout = null;
+        mInputTag = null;
+        mCheckedCount = 0;
+        // The tags are not animated in single row mode.
+        mTransitionPending = false;
+        mStripRecycledTags.clear();
+        mStripFirstBound = 0;
+
+        mStripTags = new ArrayList<>(tags);
+        mStripChecked = new boolean[tags.size()];
+        computeStripOffsets();
+
+        if (mStripScroller == null) {
+            final ViewConfiguration configuration = ViewConfiguration.get(getContext());
+            mTouchSlop = configuration.getScaledTouchSlop();
+            mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+            mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+            mStripScroller = new OverScroller(getContext());
+        }
+        mStripScroller.abortAnimation();
+        setHorizontalScrollBarEnabled(true);
+        scrollTo(0, 0);
+        requestLayout();
+    }
+
+    /**
+     * Compute the x offsets of all the tags of the single row mode from their text widths, for
+     * the current text size, max tag width and tag measurer.
+     */
+    private void computeStripOffsets() {
+        // Measure the texts with a paint like the one of the tag view.
+        mStripPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        mStripPaint.setTextSize(textSize);
+        final int[] widths = new int[mStripTags.size()];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = measureStripTag(mStripTags.get(i));
+        }
+        final Paint.FontMetricsInt fm = new Paint.FontMetricsInt();
+        mStripPaint.getFontMetricsInt(fm);
+
+        mStripOffsets = new TagStripOffsets(widths, horizontalSpacing);
+        mStripRowHeight = fm.bottom - fm.top + verticalPadding * 2;
+    }
+
+    /**
+     * Returns the width of the tag in single row mode, padding included.
+     */
+    private int measureStripTag(String tag) {
+        float textWidth = mTagMeasurer != null ? mTagMeasurer.measureText(tag, mStripPaint) : -1;
+        if (textWidth < 0) {
+            textWidth = mStripPaint.measureText(tag);
+        }
+        final int width = (int) Math.ceil(textWidth) + horizontalPadding * 2;
+        return maxTagWidth > 0 ? Math.min(width, maxTagWidth) : width;
+    }
+
+    /**
+     * Append a tag in single row mode, only its width is measured. It is bound by the next
+     * layout pass if it is in the window.
+     */
+    private void appendStripTag(String tag) {
+        final int index = mStripTags.size();
+        mStripTags.add(tag);
+        mStripChecked = Arrays.copyOf(mStripChecked, index + 1);
+        mStripOffsets = mStripOffsets.append(measureStripTag(tag));
+        requestLayout();
+    }
+
+    /**
+     * Remove the tag of the index in single row mode, with a tag view or not. The bound tags
+     * after it are bound to their new index, and moved by the next layout pass.
+     *
+     * @return true if the removed tag was checked.
+     */
+    private boolean removeStripTag(int index) {
+        final String tag = mStripTags.remove(index);
+        final boolean checked = mStripChecked[index];
+        final boolean[] stripChecked = new boolean[mStripChecked.length - 1];
+        System.arraycopy(mStripChecked, 0, stripChecked, 0, index);
+        System.arraycopy(mStripChecked, index + 1, stripChecked, index, stripChecked.length - index);
+        mStripChecked = stripChecked;
+        mStripOffsets = mStripOffsets.remove(index);
+
+        final int childIndex = index - mStripFirstBound;
+        if (childIndex < 0) {
+            mStripFirstBound--;
+        } else if (childIndex < getChildCount()) {
+            recycleStripChild(childIndex);
+        }
+        final int count = getChildCount();
+        for (int i = Math.max(0, childIndex); i < count; i++) {
+            getTagAt(i).mStripIndex = mStripFirstBound + i;
+        }
+
+        if (checked) {
+            mCheckedCount--;
+            if (mSelectionJournal != null) {
+                mSelectionJournal.record(tag, false);
+            }
+        }
+        requestLayout();
+        invalidate();
+        return checked;
+    }
+
+    private void exitStripMode() {
+        if (mStripTags == null) {
+            return;
+        }
+        mStripTags = null;
+        mStripChecked = null;
+        mStripOffsets = null;
+        mStripRecycledTags.clear();
+        mStripScroller.abortAnimation();
+        setHorizontalScrollBarEnabled(false);
+        scrollTo(0, 0);
+    }
+
+    /**
+     * Returns the tag view at the specified position in the group.
+     *
+     * @param index the position at which to get the tag view from.
+     * @return the tag view at the specified position or null if the position
+     * does not exists within this group.
+     */
+    protected TagView getTagAt(int index) {
+        return (TagView) getChildAt(index);
+    }
+
+    /**
+     * Returns the number of checked tags in the group.
+     *
+     * @return the checked tag count.
+     */
+    private int getCheckedTagCount() {
+        return mCheckedCount;
+    }
+
+    /**
+     * Check all tags, stopping at the max choose count.
+     */
+    public void checkAllTags() {
+        dispatchCheckedChange(getSelection().checkAll());
+    }
+
+    /**
+     * Uncheck all tags.
+     */
+    public void clearCheckedTags() {
+        dispatchCheckedChange(getSelection().clear());
+    }
+
+    /**
+     * Check the unchecked tags and uncheck the checked tags. If the max choose count is reached,
+     * the remaining unchecked tags stay unchecked.
+     */
+    public void invertCheckedTags() {
+        dispatchCheckedChange(getSelection().invert());
+    }
+
+    /**
+     * Check exactly the tags accepted by the filter, up to the max choose count in group order,
+     * and uncheck the others.
+     *
+     * @param filter the filter deciding the checked tags, the id of a tag is its text.
+     */
+    public void setCheckedTags(TagFilter filter) {
+        dispatchCheckedChange(getSelection().setChecked(filter));
+    }
+
+    /**
+     * Check exactly the tags in the set, up to the max choose count in group order, and uncheck
+     * the others.
+     *
+     * @param tags the tags to check.
+     */
+    public void setCheckedTags(Set<String> tags) {
+        dispatchCheckedChange(getSelection().setCheckedIds(tags));
+    }
+
+    /**
+     * Returns the selection the check operations go through: in single row mode all the tags,
+     * with a tag view or not, the children otherwise.
+     */
+    private TagSelection getSelection() {
+        final TagSelection selection = mStripTags != null ? mStripSelection : mChildSelection;
+        selection.setMaxChooseCount(maxChooseCount);
+        return selection;
+    }
+
+    /**
+     * Notify the checked tags change listener once for a batch of changes.
+     *
+     * @param changed the number of tags whose checked state changed.
+     */
+    private void dispatchCheckedChange(int changed) {
+        if (changed > 0 && mOnCheckedChangeListener != null) {
+            mOnCheckedChangeListener.onCheckedChanged(TagGroupNoEdit.this, mCheckedCount);
+        }
+    }
+
+
+    /**
+     * Returns the indexes of the checked tags, in single row mode the indexes in the tags set.
+     */
+    private String[] getCheckedTagsIndex() {
+        final List<String> tagList = new ArrayList<>();
+        if (mStripTags != null) {
+            for (int i = 0; i < mStripChecked.length; i++) {
+                if (mStripChecked[i]) {
+                    tagList.add(i + "");
+                }
+            }
+            return tagList.toArray(new String[tagList.size()]);
+        }
+
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            final TagView tagView = getTagAt(i);
+            if (tagView.isChecked) {
+                tagList.add(i + "");
+            }
+        }
+
+        return tagList.toArray(new String[tagList.size()]);
+    }
+
+
+    public String[] getCheckedTags() {
+        final List<String> tagList = new ArrayList<>();
+        if (mStripTags != null) {
+            for (int i = 0; i < mStripChecked.length; i++) {
+                if (mStripChecked[i]) {
+                    tagList.add(mStripTags.get(i));
+                }
+            }
+            return tagList.toArray(new String[tagList.size()]);
+        }
+
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            final TagView tagView = getTagAt(i);
+            if (tagView.isChecked) {
+                tagList.add(tagView.getTagText().toString());
+            }
+        }
+
+        return tagList.toArray(new String[tagList.size()]);
+    }
+
+
+//    protected TagView getCheckedTag() {
+//        final int checkedTagIndex = getCheckedTagIndex();
+//        if (checkedTagIndex != -1) {
+//            return getTagAt(checkedTagIndex);
+//        }
+//        return null;
+//    }
+
+
+    /**
+     * Register a callback to be invoked when this tag group is changed.
      *
      * @param l the callback that will run
      */
@@ -512,51 +2121,504 @@ public class TagGroupNoEdit extends ViewGroup {
      * @param tag the tag text.
      */
     protected void appendInputTag(String tag) {
+        if (mInputTag != null) {
+            throw new IllegalStateException("Already has a INPUT tag in group.");
+        }
         final TagView newInputTag = new TagView(getContext(), TagView.STATE_INPUT, tag);
         newInputTag.setOnClickListener(mInternalTagClickListener);
+        newInputTag.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (mSuggestionSource != null) {
+                    mSuggestionGeneration++;
+                    removeCallbacks(mSuggestionLookup);
+                    postDelayed(mSuggestionLookup, SUGGESTION_DEBOUNCE_MILLIS);
+                }
+            }
+        });
+        mInputTag = newInputTag;
+        endDragForChange();
         addView(newInputTag);
     }
 
     /**
-     * Append tag to this group.
+     * Run the lookup for the current INPUT tag text on the background thread, and post the
+     * result back unless the text changed in the meantime.
+     */
+    private void lookupSuggestions() {
+        final TagTrie source = mSuggestionSource;
+        if (source == null || mInputTag == null) {
+            return;
+        }
+        final String prefix = mInputTag.getText().toString();
+        final int limit = maxSuggestionCount;
+        final int generation = mSuggestionGeneration;
+        if (prefix.length() == 0) {
+            applySuggestions(new ArrayList<String>(0));
+            return;
+        }
+
+        SUGGESTION_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<String> suggestions = source.complete(prefix, limit);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mSuggestionGeneration) {
+                            applySuggestions(suggestions);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show the suggestions as the SUGGESTION tags at the end of the group. The existing
+     * SUGGESTION tags are reused, and the tags before them are never moved.
+     *
+     * @param suggestions the suggestions to show, empty to remove all SUGGESTION tags.
+     */
+    private void applySuggestions(List<String> suggestions) {
+        final int count = getChildCount();
+        final int first = getSuggestionStart();
+        final int shown = count - first;
+        final int size = suggestions.size();
+        if (shown != size) {
+            endDragForChange();
+            beginTagTransition();
+        }
+        for (int i = 0; i < Math.min(shown, size); i++) {
+            final TagView suggestionTag = getTagAt(first + i);
+            if (!suggestionTag.getTagText().toString().equals(suggestions.get(i))) {
+                // The new text may resize the tag, and move the next ones.
+                endDragForChange();
+                beginTagTransition();
+                suggestionTag.setTagText(suggestions.get(i));
+            }
+        }
+        if (shown > size) {
+            final boolean fadeOut = canRunTagTransition();
+            for (int i = count - 1; i >= first + size; i--) {
+                final TagView suggestionTag = getTagAt(i);
+                if (fadeOut) {
+                    fadeOutRemovedTag(suggestionTag);
+                }
+                removeViewAt(i);
+            }
+        }
+        for (int i = shown; i < size; i++) {
+            final TagView newSuggestionTag = new TagView(getContext(), TagView.STATE_SUGGESTION, suggestions.get(i));
+            newSuggestionTag.setOnClickListener(mInternalTagClickListener);
+            addView(newSuggestionTag);
+        }
+    }
+
+    /**
+     * Returns the index of the first SUGGESTION tag, which are always kept at the end of the group.
+     *
+     * @return the index of the first SUGGESTION tag or the child count if not exists.
+     */
+    private int getSuggestionStart() {
+        int first = getChildCount();
+        while (first > 0 && getTagAt(first - 1).mState == TagView.STATE_SUGGESTION) {
+            first--;
+        }
+        return first;
+    }
+
+    /**
+     * Append the text of the clicked SUGGESTION tag as a NORMAL tag before the INPUT tag.
+     */
+    private void acceptSuggestion(TagView suggestionTag) {
+        final String tag = suggestionTag.getTagText().toString();
+        final TagView newTag = new TagView(getContext(), TagView.STATE_NORMAL, tag);
+        newTag.setOnClickListener(mInternalTagClickListener);
+        endDragForChange();
+        beginTagTransition();
+        addView(newTag, indexOfChild(mInputTag));
+        mOtherOrientationSizes = null;
+
+        mSuggestionGeneration++;
+        removeCallbacks(mSuggestionLookup);
+        mInputTag.setText("");
+        applySuggestions(new ArrayList<String>(0));
+
+        if (mOnTagChangeListener != null) {
+            mOnTagChangeListener.onAppend(TagGroupNoEdit.this, tag);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // Hardware acceleration is only known once attached.
+        updateDrawCacheLayer();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mDragLayout != null) {
+            endDrag();
+        }
+        mSuggestionGeneration++;
+        removeCallbacks(mSuggestionLookup);
+        if (staticDrawCacheEnabled) {
+            final int count = getChildCount();
+            for (int i = 0; i < count; i++) {
+                getTagAt(i).releaseDrawCache();
+            }
+        }
+    }
+
+    /**
+     * Append tag to this group.
+     *
+     * @param tag the tag to append.
+     */
+    protected void appendTag(CharSequence tag) {
+        if (mStripTags != null) {
+            appendStripTag(tag.toString());
+            return;
+        }
+        final TagView newTag = new TagView(getContext(), TagView.STATE_NORMAL, tag);
+        newTag.setOnClickListener(mInternalTagClickListener);
+        endDragForChange();
+        beginTagTransition();
+        addView(newTag, getSuggestionStart());
+        mOtherOrientationSizes = null;
+    }
+
+    public float dp2px(float dp) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp,
+                getResources().getDisplayMetrics());
+    }
+
+    public float sp2px(float sp) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, sp,
+                getResources().getDisplayMetrics());
+    }
+
+    @Override
+    public ViewGroup.LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new TagGroupNoEdit.LayoutParams(getContext(), attrs);
+    }
+
+    /**
+     * Register a callback to be invoked when a tag is clicked.
+     *
+     * @param l the callback that will run.
+     */
+    public void setOnTagClickListener(OnTagClickListener l) {
+        mOnTagClickListener = l;
+    }
+
+    /**
+     * Register a callback to be invoked when the checked tags are changed, either by a click or
+     * by one of the bulk operations.
+     *
+     * @param l the callback that will run.
+     */
+    public void setOnCheckedChangeListener(OnCheckedChangeListener l) {
+        mOnCheckedChangeListener = l;
+    }
+
+    /**
+     * Persist the checked tags in the journal: the tags recorded as checked in it are checked,
+     * in a single pass over the tags, and from then on every check or uncheck is recorded in it
+     * by its tag text. Set the tags first.
+     * <p>
+     * The tags already checked stay checked. The journal is then brought in line with the
+     * group: the recorded tags left unchecked, by the max choose count or because they are not
+     * in the tags, are recorded as unchecked, and the other checked tags as checked.
+     * </p>
+     *
+     * @param journal the journal, or null to stop recording.
+     */
+    public void setSelectionJournal(TagSelectionJournal journal) {
+        mSelectionJournal = null;
+        if (journal != null) {
+            final Set<String> journalIds = journal.getCheckedIds();
+            dispatchCheckedChange(getSelection().checkIds(journalIds));
+
+            final String[] checkedTags = getCheckedTags();
+            final Set<String> checkedIds = new HashSet<>(Arrays.asList(checkedTags));
+            for (String id : journalIds) {
+                if (!checkedIds.contains(id)) {
+                    journal.record(id, false);
+                }
+            }
+            for (String id : checkedTags) {
+                if (!journalIds.contains(id)) {
+                    journal.record(id, true);
+                }
+            }
+        }
+        mSelectionJournal = journal;
+    }
+
+    /**
+     * Measure the tag texts with the measurer, e.g. an {@link AdvanceTableTagMeasurer}, instead
+     * of the text layout of the tag views. The tags the measurer can not measure are measured by
+     * their tag view, as are the INPUT tag and the tags wider than the group.
+     *
+     * @param measurer the measurer, or null to let the tag views measure all the tags.
+     */
+    public void setTagMeasurer(TagMeasurer measurer) {
+        mTagMeasurer = measurer;
+        if (mStripTags != null) {
+            computeStripOffsets();
+        }
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            getChildAt(i).requestLayout();
+        }
+        requestLayout();
+    }
+
+    /**
+     * Verify the tag measurer: while a listener is set, every tag the measurer measures is also
+     * measured by its tag view, the size of the tag view is used, and the listener is called for
+     * every tag whose sizes differ. Meant for debug builds, it costs both measures.
+     *
+     * @param l the callback that will run, or null to leave the verification mode.
+     */
+    public void setOnMeasureMismatchListener(OnMeasureMismatchListener l) {
+        mOnMeasureMismatchListener = l;
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            getChildAt(i).requestLayout();
+        }
+    }
+
+    /**
+     * Register a callback to be invoked when a tag is dragged to another place.
+     *
+     * @param l the callback that will run.
+     */
+    public void setOnTagMoveListener(OnTagMoveListener l) {
+        mOnTagMoveListener = l;
+    }
+
+    protected void deleteTag(TagView tagView) {
+        if (mStripTags != null) {
+            // The tag view is only bound to the tag, which is removed from the tags.
+            if (tagView.mStripIndex >= 0) {
+                final String tag = mStripTags.get(tagView.mStripIndex);
+                removeStripTag(tagView.mStripIndex);
+                if (mOnTagChangeListener != null) {
+                    mOnTagChangeListener.onDelete(TagGroupNoEdit.this, tag);
+                }
+            }
+            return;
+        }
+        endDragForChange();
+        final boolean fadeOut = canRunTagTransition();
+        beginTagTransition();
+        if (fadeOut) {
+            fadeOutRemovedTag(tagView);
+        }
+        removeView(tagView);
+        mOtherOrientationSizes = null;
+        if (tagView.isChecked) {
+            mCheckedCount--;
+            recordRemovedCheckedTag(tagView);
+        }
+        if (tagView == mInputTag) {
+            mInputTag = null;
+        }
+        if (mOnTagChangeListener != null) {
+            mOnTagChangeListener.onDelete(TagGroupNoEdit.this, tagView.getTagText().toString());
+        }
+    }
+
+    /**
+     * A removed tag is no longer checked, the journal must not restore it.
+     */
+    private void recordRemovedCheckedTag(TagView tag) {
+        if (mSelectionJournal != null && tag.mState == TagView.STATE_NORMAL) {
+            mSelectionJournal.record(tag.getTagText().toString(), false);
+        }
+    }
+
+    /**
+     * Append a tag on the next frame. Safe to call from any thread.
+     *
+     * @param tag the tag to append.
+     */
+    public void postAppendTag(String tag) {
+        postChange(new PendingChange(PendingChange.APPEND, tag, false));
+    }
+
+    /**
+     * Remove the first tag with the text on the next frame. Safe to call from any thread.
+     *
+     * @param tag the tag to remove.
+     */
+    public void postRemoveTag(String tag) {
+        postChange(new PendingChange(PendingChange.REMOVE, tag, false));
+    }
+
+    /**
+     * Check or uncheck the first tag with the text on the next frame, checking is ignored if the
+     * max choose count is reached. Safe to call from any thread.
      *
-     * @param tag the tag to append.
+     * @param tag     the tag to check or uncheck.
+     * @param checked true to check, false to uncheck.
      */
-    protected void appendTag(CharSequence tag) {
-        final TagView newTag = new TagView(getContext(), TagView.STATE_NORMAL, tag);
-        newTag.setOnClickListener(mInternalTagClickListener);
-        addView(newTag);
+    public void postCheckTag(String tag, boolean checked) {
+        postChange(new PendingChange(PendingChange.CHECK, tag, checked));
     }
 
-    public float dp2px(float dp) {
-        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp,
-                getResources().getDisplayMetrics());
+    private void postChange(PendingChange change) {
+        mPendingChanges.offer(change);
+        if (mPendingFrameScheduled.compareAndSet(false, true)) {
+            // The Choreographer is per thread, so it must be obtained on the UI thread.
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                mSchedulePendingChanges.run();
+            } else {
+                mMainHandler.post(mSchedulePendingChanges);
+            }
+        }
     }
 
-    public float sp2px(float sp) {
-        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, sp,
-                getResources().getDisplayMetrics());
-    }
+    /**
+     * Apply all the pending changes, with a single layout request for the whole batch.
+     */
+    private void applyPendingChanges() {
+        // Clear the flag first, so a change posted while draining schedules the next frame.
+        mPendingFrameScheduled.set(false);
+
+        Map<String, ArrayDeque<TagView>> tagsByText = null;
+        boolean structureChanged = false;
+        int checkedChanged = 0;
+        PendingChange change;
+        while ((change = mPendingChanges.poll()) != null) {
+            if (mStripTags != null) {
+                checkedChanged += applyStripChange(change);
+                continue;
+            }
+            if (change.type == PendingChange.APPEND) {
+                final TagView newTag = new TagView(getContext(), TagView.STATE_NORMAL, change.tag);
+                newTag.setOnClickListener(mInternalTagClickListener);
+                endDragForChange();
+                beginTagTransition();
+                addViewInLayout(newTag, getSuggestionStart(), newTag.getLayoutParams(), true);
+                if (tagsByText != null) {
+                    // Appended after the NORMAL tags, so it is the last one with its text.
+                    addTagByText(tagsByText, change.tag, newTag);
+                }
+                structureChanged = true;
+                if (mOnTagChangeListener != null) {
+                    mOnTagChangeListener.onAppend(TagGroupNoEdit.this, change.tag);
+                }
+                continue;
+            }
 
-    @Override
-    public ViewGroup.LayoutParams generateLayoutParams(AttributeSet attrs) {
-        return new TagGroupNoEdit.LayoutParams(getContext(), attrs);
+            if (tagsByText == null) {
+                tagsByText = indexTagsByText();
+            }
+            final ArrayDeque<TagView> sameText = tagsByText.get(change.tag);
+            if (sameText == null) {
+                continue;
+            }
+            final TagView tag = sameText.peekFirst();
+            if (change.type == PendingChange.REMOVE) {
+                // The next tag with the text, if any, is the first one now.
+                sameText.pollFirst();
+                if (sameText.isEmpty()) {
+                    tagsByText.remove(change.tag);
+                }
+                endDragForChange();
+                if (canRunTagTransition()) {
+                    beginTagTransition();
+                    fadeOutRemovedTag(tag);
+                }
+                removeViewInLayout(tag);
+                if (tag.isChecked) {
+                    mCheckedCount--;
+                    checkedChanged++;
+                    recordRemovedCheckedTag(tag);
+                }
+                structureChanged = true;
+                if (mOnTagChangeListener != null) {
+                    mOnTagChangeListener.onDelete(TagGroupNoEdit.this, change.tag);
+                }
+            } else if (change.checked != tag.isChecked && (!change.checked || getSelection().canCheck())) {
+                tag.setChecked(change.checked);
+                checkedChanged++;
+            }
+        }
+
+        if (structureChanged) {
+            mOtherOrientationSizes = null;
+            requestLayout();
+            invalidate();
+        }
+        dispatchCheckedChange(checkedChanged);
     }
 
     /**
-     * Register a callback to be invoked when a tag is clicked.
+     * Apply a pending change to the tags of the single row mode, the first tag with the text is
+     * removed or checked whether it has a tag view or not.
      *
-     * @param l the callback that will run.
+     * @return the number of tags whose checked state changed.
      */
-    public void setOnTagClickListener(OnTagClickListener l) {
-        mOnTagClickListener = l;
+    private int applyStripChange(PendingChange change) {
+        if (change.type == PendingChange.APPEND) {
+            appendStripTag(change.tag);
+            if (mOnTagChangeListener != null) {
+                mOnTagChangeListener.onAppend(TagGroupNoEdit.this, change.tag);
+            }
+            return 0;
+        }
+        final int index = mStripTags.indexOf(change.tag);
+        if (index < 0) {
+            return 0;
+        }
+        if (change.type == PendingChange.REMOVE) {
+            final boolean checked = removeStripTag(index);
+            if (mOnTagChangeListener != null) {
+                mOnTagChangeListener.onDelete(TagGroupNoEdit.this, change.tag);
+            }
+            return checked ? 1 : 0;
+        }
+        return change.checked != mStripChecked[index] && getSelection().toggle(index) ? 1 : 0;
     }
 
-    protected void deleteTag(TagView tagView) {
-        removeView(tagView);
-        if (mOnTagChangeListener != null) {
-            mOnTagChangeListener.onDelete(TagGroupNoEdit.this, tagView.getText().toString());
+    /**
+     * Returns the NORMAL tags by their text, the tags with the same text in their order.
+     */
+    private Map<String, ArrayDeque<TagView>> indexTagsByText() {
+        final int count = getChildCount();
+        final Map<String, ArrayDeque<TagView>> tagsByText = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            final TagView tag = getTagAt(i);
+            if (tag.mState == TagView.STATE_NORMAL) {
+                addTagByText(tagsByText, tag.getTagText().toString(), tag);
+            }
+        }
+        return tagsByText;
+    }
+
+    private static void addTagByText(Map<String, ArrayDeque<TagView>> tagsByText, String text, TagView tag) {
+        ArrayDeque<TagView> sameText = tagsByText.get(text);
+        if (sameText == null) {
+            // Most texts are not duplicated.
+            sameText = new ArrayDeque<>(2);
+            tagsByText.put(text, sameText);
         }
+        sameText.addLast(tag);
     }
 
     /**
@@ -590,6 +2652,188 @@ public class TagGroupNoEdit extends ViewGroup {
         void onTagClick(String tag);
     }
 
+    /**
+     * Builds a {@link TagGroupNoEdit} in code, without resolving any styled attribute. The
+     * unset values are the defaults of the group.
+     */
+    public static class Builder {
+        private final Context mContext;
+        private final TagStyle mStyle;
+
+        public Builder(Context context) {
+            mContext = context;
+            mStyle = TagStyle.defaults(context.getResources().getDisplayMetrics());
+        }
+
+        public Builder setBorderColor(int color) {
+            mStyle.borderColor = color;
+            return this;
+        }
+
+        public Builder setTextColor(int color) {
+            mStyle.textColor = color;
+            return this;
+        }
+
+        public Builder setBackgroundColor(int color) {
+            mStyle.backgroundColor = color;
+            return this;
+        }
+
+        public Builder setDashBorderColor(int color) {
+            mStyle.dashBorderColor = color;
+            return this;
+        }
+
+        public Builder setCheckedBorderColor(int color) {
+            mStyle.checkedBorderColor = color;
+            return this;
+        }
+
+        public Builder setCheckedTextColor(int color) {
+            mStyle.checkedTextColor = color;
+            return this;
+        }
+
+        public Builder setCheckedMarkerColor(int color) {
+            mStyle.checkedMarkerColor = color;
+            return this;
+        }
+
+        public Builder setCheckedBackgroundColor(int color) {
+            mStyle.checkedBackgroundColor = color;
+            return this;
+        }
+
+        public Builder setPressedBackgroundColor(int color) {
+            mStyle.pressedBackgroundColor = color;
+            return this;
+        }
+
+        /**
+         * @param width the border stroke width in pixels.
+         */
+        public Builder setBorderStrokeWidth(float width) {
+            mStyle.borderStrokeWidth = width;
+            return this;
+        }
+
+        /**
+         * @param size the text size in pixels.
+         */
+        public Builder setTextSize(float size) {
+            mStyle.textSize = size;
+            return this;
+        }
+
+        /**
+         * @param spacing the horizontal spacing in pixels.
+         */
+        public Builder setHorizontalSpacing(int spacing) {
+            mStyle.horizontalSpacing = spacing;
+            return this;
+        }
+
+        /**
+         * @param spacing the vertical spacing in pixels.
+         */
+        public Builder setVerticalSpacing(int spacing) {
+            mStyle.verticalSpacing = spacing;
+            return this;
+        }
+
+        /**
+         * @param padding the horizontal tag padding in pixels.
+         */
+        public Builder setHorizontalPadding(int padding) {
+            mStyle.horizontalPadding = padding;
+            return this;
+        }
+
+        /**
+         * @param padding the vertical tag padding in pixels.
+         */
+        public Builder setVerticalPadding(int padding) {
+            mStyle.verticalPadding = padding;
+            return this;
+        }
+
+        /**
+         * @see TagGroupNoEdit#setMaxTagWidth(int)
+         */
+        public Builder setMaxTagWidth(int width) {
+            mStyle.maxTagWidth = width;
+            return this;
+        }
+
+        public TagGroupNoEdit build() {
+            return new TagGroupNoEdit(mContext, new TagStyle(mStyle));
+        }
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when the checked tags are changed.
+     */
+    public interface OnCheckedChangeListener {
+        /**
+         * Called once after one or more tags have been checked or unchecked.
+         *
+         * @param checkedCount the number of checked tags now.
+         */
+        void onCheckedChanged(TagGroupNoEdit tagGroup, int checkedCount);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when a tag is moved by a drag.
+     */
+    public interface OnTagMoveListener {
+        /**
+         * Called when a dragged tag has been dropped at another index.
+         *
+         * @param tag  the moved tag.
+         * @param from the index of the tag before the drag.
+         * @param to   the index of the tag now.
+         */
+        void onTagMove(TagGroupNoEdit tagGroup, String tag, int from, int to);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when the tag measurer and the tag view
+     * measure a tag differently.
+     */
+    public interface OnMeasureMismatchListener {
+        /**
+         * Called when a tag has been measured differently.
+         *
+         * @param tag          the displayed tag text.
+         * @param fastWidth    the width from the tag measurer.
+         * @param fastHeight   the height from the tag measurer.
+         * @param actualWidth  the width measured by the tag view.
+         * @param actualHeight the height measured by the tag view.
+         */
+        void onMeasureMismatch(TagGroupNoEdit tagGroup, String tag, int fastWidth, int fastHeight,
+                               int actualWidth, int actualHeight);
+    }
+
+    /**
+     * A tag change posted to be applied on the next frame.
+     */
+    private static final class PendingChange {
+        static final int APPEND = 1;
+        static final int REMOVE = 2;
+        static final int CHECK = 3;
+
+        final int type;
+        final String tag;
+        final boolean checked;
+
+        PendingChange(int type, String tag, boolean checked) {
+            this.type = type;
+            this.tag = tag;
+            this.checked = checked;
+        }
+    }
+
     /**
      * Per-child layout information for layouts.c
      */
@@ -617,20 +2861,26 @@ public class TagGroupNoEdit extends ViewGroup {
                         return new SavedState[size];
                     }
                 };
+        boolean singleRow;
         int tagCount;
         String[] tags;
         int checkedTagsCount;
         String[] checkedTagsIndex;
         String input;
+        TagSizeSnapshot tagSizes;
+        TagSizeSnapshot otherTagSizes;
 
         public SavedState(Parcel source) {
             super(source);
+            singleRow = source.readInt() != 0;
             tagCount = source.readInt();
             tags = new String[tagCount];
             source.readStringArray(tags);
-            checkedTagsIndex = new String[checkedTagsCount];
-            source.readStringArray(checkedTagsIndex);
+            checkedTagsCount = source.readInt();
+            checkedTagsIndex = source.createStringArray();
             input = source.readString();
+            tagSizes = TagSizeSnapshot.readFromParcel(source);
+            otherTagSizes = TagSizeSnapshot.readFromParcel(source);
         }
 
         public SavedState(Parcelable superState) {
@@ -640,12 +2890,60 @@ public class TagGroupNoEdit extends ViewGroup {
         @Override
         public void writeToParcel(Parcel dest, int flags) {
             super.writeToParcel(dest, flags);
+            dest.writeInt(singleRow ? 1 : 0);
             tagCount = tags.length;
             dest.writeInt(tagCount);
             dest.writeStringArray(tags);
             dest.writeInt(checkedTagsCount);
             dest.writeStringArray(checkedTagsIndex);
             dest.writeString(input);
+            TagSizeSnapshot.writeToParcel(tagSizes, dest);
+            TagSizeSnapshot.writeToParcel(otherTagSizes, dest);
+        }
+    }
+
+    /**
+     * The measured sizes of the NORMAL tags in an orientation, with the width inside the padding,
+     * the style key and a hash of the tag texts they were measured with.
+     */
+    static final class TagSizeSnapshot {
+        final int orientation;
+        final int availableWidth;
+        final int styleKey;
+        final int textsHash;
+        final int[] widths;
+        final int[] heights;
+
+        TagSizeSnapshot(int orientation, int availableWidth, int styleKey, int textsHash,
+                        int[] widths, int[] heights) {
+            this.orientation = orientation;
+            this.availableWidth = availableWidth;
+            this.styleKey = styleKey;
+            this.textsHash = textsHash;
+            this.widths = widths;
+            this.heights = heights;
+        }
+
+        static void writeToParcel(TagSizeSnapshot snapshot, Parcel dest) {
+            if (snapshot == null) {
+                dest.writeInt(0);
+                return;
+            }
+            dest.writeInt(1);
+            dest.writeInt(snapshot.orientation);
+            dest.writeInt(snapshot.availableWidth);
+            dest.writeInt(snapshot.styleKey);
+            dest.writeInt(snapshot.textsHash);
+            dest.writeIntArray(snapshot.widths);
+            dest.writeIntArray(snapshot.heights);
+        }
+
+        static TagSizeSnapshot readFromParcel(Parcel source) {
+            if (source.readInt() == 0) {
+                return null;
+            }
+            return new TagSizeSnapshot(source.readInt(), source.readInt(), source.readInt(),
+                    source.readInt(), source.createIntArray(), source.createIntArray());
         }
     }
 
@@ -657,38 +2955,43 @@ public class TagGroupNoEdit extends ViewGroup {
         public void onClick(View v) {
             final TagView tag = (TagView) v;
 
+            if (tag.mState == TagView.STATE_SUGGESTION) {
+                acceptSuggestion(tag);
+                return;
+            }
+
             // If the clicked tag is unchecked, uncheck the previous checked tag if exists,
             // then check the clicked tag.
             if (tag.isChecked) {
                 tag.setChecked(false);
+                dispatchCheckedChange(1);
                 if (mOnTagClickListener != null) {
-                    mOnTagClickListener.onTagClick(tag.getText().toString());
+                    mOnTagClickListener.onTagClick(tag.getTagText().toString());
                 }
                 return;
             }
 
 
-            if (maxChooseCount > 0) {
-                final int checkedTagCount = getCheckedTagCount();
-                if (checkedTagCount >= maxChooseCount) {
-                    Toast.makeText(getContext(), "最多" + maxChooseCount + "个", Toast.LENGTH_SHORT).show();
-                    return;
-                }
+            if (!getSelection().canCheck()) {
+                Toast.makeText(getContext(), "最多" + maxChooseCount + "个", Toast.LENGTH_SHORT).show();
+                return;
             }
 
             tag.setChecked(true);
+            dispatchCheckedChange(1);
             if (mOnTagClickListener != null) {
-                mOnTagClickListener.onTagClick(tag.getText().toString());
+                mOnTagClickListener.onTagClick(tag.getTagText().toString());
             }
         }
     }
 
     /**
-     * The tag view which has two states can be either NORMAL or INPUT.
+     * The tag view which has three states can be either NORMAL, INPUT or SUGGESTION.
      */
     class TagView extends TextView {
         public static final int STATE_NORMAL = 1;
         public static final int STATE_INPUT = 2;
+        public static final int STATE_SUGGESTION = 3;
 
         /**
          * The offset to the text.
@@ -705,6 +3008,34 @@ public class TagGroupNoEdit extends ViewGroup {
          */
         private int mState;
 
+        /**
+         * The full text of the NORMAL or SUGGESTION tag, which may be displayed ellipsized.
+         */
+        private CharSequence mTagText;
+
+        /**
+         * Whether the tag is kept on a single line for the grid mode.
+         */
+        private boolean mGridCell;
+
+        /**
+         * The size known without measuring the text, -1 if the tag must be measured.
+         */
+        private int mPresetWidth = -1;
+        private int mPresetHeight = -1;
+
+        /**
+         * Where the tag was drawn before a change of the tags, see {@link #beginTagTransition()}.
+         */
+        private float mTransitionLeft;
+        private float mTransitionTop;
+        private boolean mHasTransitionStart;
+
+        /**
+         * The index of the bound tag in single row mode, -1 otherwise.
+         */
+        private int mStripIndex = -1;
+
         /**
          * Indicates the tag if checked.
          */
@@ -761,6 +3092,21 @@ public class TagGroupNoEdit extends ViewGroup {
          */
         private PathEffect mPathEffect = new DashPathEffect(new float[]{10, 5}, 0);
 
+        /**
+         * The drawing of the tag on a software canvas, when the static draw cache is enabled.
+         */
+        private Bitmap mDrawCache;
+
+        /**
+         * The canvas drawing into the draw cache, kept with the tag to not allocate in onDraw.
+         */
+        private Canvas mDrawCacheCanvas;
+
+        /**
+         * Indicates the drawing of the tag changed since it was last drawn or cached.
+         */
+        private boolean mDrawDirty = true;
+
         {
             mBorderPaint.setStyle(Paint.Style.STROKE);
             mBorderPaint.setStrokeWidth(borderStrokeWidth);
@@ -779,10 +3125,12 @@ public class TagGroupNoEdit extends ViewGroup {
                     TagGroupNoEdit.LayoutParams.WRAP_CONTENT));
 
             setGravity(Gravity.CENTER);
-            setText(text);
             setTextSize(TypedValue.COMPLEX_UNIT_PX, textSize);
 
             mState = state;
+            setTagText(text);
+            // Added to a group in grid mode.
+            setGridCell(isGridMode());
 
             setClickable(true);
             setFocusable(state == STATE_INPUT);
@@ -794,22 +3142,163 @@ public class TagGroupNoEdit extends ViewGroup {
             setOnLongClickListener(new OnLongClickListener() {
                 @Override
                 public boolean onLongClick(View v) {
+                    if (mState == STATE_NORMAL && startDrag(TagView.this)) {
+                        return true;
+                    }
                     return state != STATE_INPUT;
                 }
             });
             invalidatePaint();
         }
 
+        /**
+         * Set the size of the tag known without measuring its text.
+         *
+         * @param width  the width, -1 to measure the tag.
+         * @param height the height, -1 to measure the tag.
+         */
+        void setPresetSize(int width, int height) {
+            if (mPresetWidth != width || mPresetHeight != height) {
+                mPresetWidth = width;
+                mPresetHeight = height;
+                requestLayout();
+            }
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            if (mPresetWidth >= 0 && mPresetHeight >= 0) {
+                setMeasuredDimension(resolveSize(mPresetWidth, widthMeasureSpec),
+                        resolveSize(mPresetHeight, heightMeasureSpec));
+                return;
+            }
+            final int fastWidth = measureFastWidth(widthMeasureSpec);
+            if (fastWidth < 0) {
+                super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+                return;
+            }
+            // A single line, as high as the text view lays it out with the font padding.
+            getPaint().getFontMetricsInt(mTagFontMetrics);
+            final int fastHeight = resolveSize(mTagFontMetrics.bottom - mTagFontMetrics.top
+                    + getPaddingTop() + getPaddingBottom(), heightMeasureSpec);
+            if (mOnMeasureMismatchListener == null) {
+                setMeasuredDimension(fastWidth, fastHeight);
+                return;
+            }
+
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            if (fastWidth != getMeasuredWidth() || fastHeight != getMeasuredHeight()) {
+                mOnMeasureMismatchListener.onMeasureMismatch(TagGroupNoEdit.this, getText().toString(),
+                        fastWidth, fastHeight, getMeasuredWidth(), getMeasuredHeight());
+            }
+        }
+
+        /**
+         * Returns the width of the tag from the tag measurer, or -1 if the tag view must measure
+         * its text.
+         */
+        private int measureFastWidth(int widthMeasureSpec) {
+            if (mTagMeasurer == null || mState == STATE_INPUT) {
+                return -1;
+            }
+            final float textWidth = mTagMeasurer.measureText(getText(), getPaint());
+            if (textWidth < 0) {
+                return -1;
+            }
+            final int width = (int) Math.ceil(textWidth) + getPaddingLeft() + getPaddingRight();
+            final int mode = MeasureSpec.getMode(widthMeasureSpec);
+            final int size = MeasureSpec.getSize(widthMeasureSpec);
+            if (mode != MeasureSpec.UNSPECIFIED && width > size) {
+                // The text wraps, only the text view knows how.
+                return -1;
+            }
+            return mode == MeasureSpec.EXACTLY ? size : width;
+        }
+
         /**
          * Set whether this tag view is in the checked state.
          *
          * @param checked true is checked, false otherwise
          */
         public void setChecked(boolean checked) {
+            if (isChecked == checked) {
+                return;
+            }
+            mCheckedCount += checked ? 1 : -1;
+            if (mStripIndex >= 0) {
+                mStripChecked[mStripIndex] = checked;
+            }
             isChecked = checked;
+            if (mSelectionJournal != null && mState == STATE_NORMAL) {
+                mSelectionJournal.record(getTagText().toString(), checked);
+            }
             invalidatePaint();
+            invalidate();
+            if (tagTransitionsEnabled && mStripIndex < 0 && getWidth() > 0) {
+                // Fade into the new state.
+                setAlpha(0.4f);
+                animate().alpha(1).setDuration(TRANSITION_DURATION).withLayer();
+            }
+        }
+
+        /**
+         * Show a checked state which the group already counts, e.g. of a tag bound in single row
+         * mode or restored.
+         */
+        void bindChecked(boolean checked) {
+            if (isChecked != checked) {
+                isChecked = checked;
+                invalidatePaint();
+                invalidate();
+            }
+        }
+
+
+        /**
+         * Set the tag text, ellipsized if it is wider than the max tag width.
+         *
+         * @param text the full tag text.
+         */
+        public void setTagText(CharSequence text) {
+            // The preset size was measured for the previous text.
+            mPresetWidth = -1;
+            mPresetHeight = -1;
+            if (mState == STATE_NORMAL && !TextUtils.equals(text, getTagText())) {
+                mOtherOrientationSizes = null;
+            }
+            if (mState == STATE_INPUT || maxTagWidth <= 0 || text == null) {
+                mTagText = null;
+                setText(text);
+                return;
+            }
+            mTagText = text;
+            setText(TagEllipsizer.ellipsize(text, getPaint(), maxTagWidth - horizontalPadding * 2));
+        }
+
+        /**
+         * Keep the tag on a single line, its text ellipsized at the end of the width it is
+         * measured in or scrolled for the INPUT tag, so all the tags have the height of one line.
+         *
+         * @param gridCell true in grid mode, false to let the tag wrap its content again.
+         */
+        void setGridCell(boolean gridCell) {
+            if (mGridCell == gridCell) {
+                return;
+            }
+            mGridCell = gridCell;
+            setMaxLines(gridCell ? 1 : Integer.MAX_VALUE);
+            setHorizontallyScrolling(gridCell);
+            if (mState != STATE_INPUT) {
+                setEllipsize(gridCell ? TextUtils.TruncateAt.END : null);
+            }
         }
 
+        /**
+         * Returns the full tag text, which is not ellipsized.
+         */
+        public CharSequence getTagText() {
+            return mTagText != null ? mTagText : getText();
+        }
 
         @Override
         protected boolean getDefaultEditable() {
@@ -826,9 +3315,15 @@ public class TagGroupNoEdit extends ViewGroup {
         }
 
         private void invalidatePaint() {
+            mDrawDirty = true;
 
             mBorderPaint.setPathEffect(null);
-            if (isChecked) {
+            if (mState == STATE_SUGGESTION) {
+                mBorderPaint.setColor(dashBorderColor);
+                mBorderPaint.setPathEffect(mPathEffect);
+                mBackgroundPaint.setColor(backgroundColor);
+                setTextColor(dashBorderColor);
+            } else if (isChecked) {
                 mBorderPaint.setColor(checkedBorderColor);
                 mBackgroundPaint.setColor(checkedBackgroundColor);
                 setTextColor(checkedTextColor);
@@ -846,6 +3341,71 @@ public class TagGroupNoEdit extends ViewGroup {
 
         @Override
         protected void onDraw(Canvas canvas) {
+            if (!staticDrawCacheEnabled || mState == STATE_INPUT) {
+                drawTag(canvas);
+                return;
+            }
+            if (canvas.isHardwareAccelerated()) {
+                // Recording the display list again, it is cached by the renderer.
+                mDrawCacheMisses++;
+                mDrawDirty = false;
+                drawTag(canvas);
+                return;
+            }
+
+            if (mDrawCache == null || mDrawCache.getWidth() != getWidth() || mDrawCache.getHeight() != getHeight()) {
+                releaseDrawCache();
+                final int bytes = getWidth() * getHeight() * 4;
+                if (bytes == 0 || mSoftwareDrawCacheBytes + bytes > MAX_SOFTWARE_DRAW_CACHE_BYTES) {
+                    mDrawCacheMisses++;
+                    drawTag(canvas);
+                    return;
+                }
+                mDrawCache = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+                mSoftwareDrawCacheBytes += bytes;
+                if (mDrawCacheCanvas == null) {
+                    mDrawCacheCanvas = new Canvas();
+                }
+                mDrawCacheCanvas.setBitmap(mDrawCache);
+            }
+            if (mDrawDirty) {
+                mDrawCacheMisses++;
+                mDrawCache.eraseColor(Color.TRANSPARENT);
+                final int saveCount = mDrawCacheCanvas.save();
+                mDrawCacheCanvas.translate(-getScrollX(), -getScrollY());
+                drawTag(mDrawCacheCanvas);
+                mDrawCacheCanvas.restoreToCount(saveCount);
+                mDrawDirty = false;
+            } else {
+                mDrawCacheHits++;
+            }
+            canvas.drawBitmap(mDrawCache, getScrollX(), getScrollY(), null);
+        }
+
+        void releaseDrawCache() {
+            if (mDrawCache != null) {
+                mSoftwareDrawCacheBytes -= mDrawCache.getWidth() * mDrawCache.getHeight() * 4;
+                mDrawCacheCanvas.setBitmap(null);
+                mDrawCache.recycle();
+                mDrawCache = null;
+            }
+            mDrawDirty = true;
+        }
+
+        @Override
+        protected void onDetachedFromWindow() {
+            super.onDetachedFromWindow();
+            // A removed or recycled tag gives its bitmap back to the group.
+            releaseDrawCache();
+        }
+
+        @Override
+        protected void onTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+            super.onTextChanged(text, start, lengthBefore, lengthAfter);
+            mDrawDirty = true;
+        }
+
+        private void drawTag(Canvas canvas) {
             canvas.drawArc(mLeftCornerRectF, -180, 90, true, mBackgroundPaint);
             canvas.drawArc(mLeftCornerRectF, -270, 90, true, mBackgroundPaint);
             canvas.drawArc(mRightCornerRectF, -90, 90, true, mBackgroundPaint);
@@ -859,6 +3419,7 @@ public class TagGroupNoEdit extends ViewGroup {
         @Override
         protected void onSizeChanged(int w, int h, int oldw, int oldh) {
             super.onSizeChanged(w, h, oldw, oldh);
+            mDrawDirty = true;
             int left = (int) borderStrokeWidth;
             int top = (int) borderStrokeWidth;
             int right = (int) (left + w - borderStrokeWidth * 2);
@@ -0,0 +1,20 @@
+package com.example.ljj.texttagdemo.tool;
+
+import android.text.TextPaint;
+
+/**
+ * Measures the text of the tags of a {@link TagGroupNoEdit} without a text layout. A tag whose
+ * text the measurer can not measure is measured by its text view as usual.
+ *
+ * @see TagGroupNoEdit#setTagMeasurer(TagMeasurer)
+ */
+public interface TagMeasurer {
+    /**
+     * Returns the width of the text drawn on a single line with the paint.
+     *
+     * @param text  the displayed tag text.
+     * @param paint the paint of the tag view, it must not be modified.
+     * @return the width in pixels, or a negative value to let the tag view measure the text.
+     */
+    float measureText(CharSequence text, TextPaint paint);
+}
@@ -0,0 +1,194 @@
+package com.example.ljj.texttagdemo.tool;
+
+import java.util.Arrays;
+
+/**
+ * The row index of a laid out {@link TagGroupNoEdit}: the y-range of every row, and the x-range
+ * of every visible tag in row order. It is rebuilt at the end of each layout pass, and answers
+ * hit testing and position queries with binary searches instead of scanning all children.
+ * <p>
+ * A row is a run of visible tags sharing the same top, tags in a row are ordered from left
+ * to right.
+ * </p>
+ */
+final class TagRowIndex {
+    /**
+     * The number of rows.
+     */
+    private int mRowCount;
+
+    /**
+     * The top and bottom of every row, and the first slot of every row. mRowStart has one more
+     * element than the rows, which is the slot count.
+     */
+    private int[] mRowTop = new int[8];
+    private int[] mRowBottom = new int[8];
+    private int[] mRowStart = new int[9];
+
+    /**
+     * The number of slots, a slot is a visible tag.
+     */
+    private int mSlotCount;
+
+    /**
+     * The child index, the left and the right of every slot.
+     */
+    private int[] mSlotChild = new int[16];
+    private int[] mSlotLeft = new int[16];
+    private int[] mSlotRight = new int[16];
+
+    /**
+     * The number of children indexed, and the row of every child index, -1 for the GONE
+     * children. mChildRow may be longer than the children, after the group lost children.
+     */
+    private int mChildCount;
+    private int[] mChildRow = new int[16];
+
+    /**
+     * Start to rebuild the index.
+     *
+     * @param childCount the number of children in the group.
+     */
+    void begin(int childCount) {
+        mRowCount = 0;
+        mSlotCount = 0;
+        mChildCount = childCount;
+        if (mChildRow.length < childCount) {
+            mChildRow = new int[childCount];
+            mSlotChild = new int[childCount];
+            mSlotLeft = new int[childCount];
+            mSlotRight = new int[childCount];
+        }
+        Arrays.fill(mChildRow, 0, childCount, -1);
+    }
+
+    /**
+     * Add the next visible child, the children must be added in layout order.
+     */
+    void add(int childIndex, int left, int top, int right, int bottom) {
+        if (mRowCount == 0 || mRowTop[mRowCount - 1] != top) {
+            if (mRowCount == mRowTop.length) {
+                mRowTop = Arrays.copyOf(mRowTop, mRowCount * 2);
+                mRowBottom = Arrays.copyOf(mRowBottom, mRowCount * 2);
+                mRowStart = Arrays.copyOf(mRowStart, mRowCount * 2 + 1);
+            }
+            mRowTop[mRowCount] = top;
+            mRowBottom[mRowCount] = bottom;
+            mRowStart[mRowCount] = mSlotCount;
+            mRowCount++;
+        } else if (bottom > mRowBottom[mRowCount - 1]) {
+            mRowBottom[mRowCount - 1] = bottom;
+        }
+
+        mSlotChild[mSlotCount] = childIndex;
+        mSlotLeft[mSlotCount] = left;
+        mSlotRight[mSlotCount] = right;
+        mSlotCount++;
+        mChildRow[childIndex] = mRowCount - 1;
+    }
+
+    /**
+     * Finish the rebuild.
+     */
+    void end() {
+        mRowStart[mRowCount] = mSlotCount;
+    }
+
+    int getRowCount() {
+        return mRowCount;
+    }
+
+    int getRowTop(int row) {
+        return mRowTop[row];
+    }
+
+    int getRowBottom(int row) {
+        return mRowBottom[row];
+    }
+
+    /**
+     * Returns the row of the child, or -1 if the child is GONE or not indexed.
+     */
+    int rowOf(int childIndex) {
+        if (childIndex < 0 || childIndex >= mChildCount) {
+            return -1;
+        }
+        return mChildRow[childIndex];
+    }
+
+    /**
+     * Returns the index of the child containing the point, or -1 if none.
+     */
+    int childAt(int x, int y) {
+        final int row = rowAt(y);
+        if (row < 0) {
+            return -1;
+        }
+        final int slot = firstSlotEndingAfter(row, x);
+        if (slot < 0 || mSlotLeft[slot] > x) {
+            return -1;
+        }
+        return mSlotChild[slot];
+    }
+
+    /**
+     * Returns the index of the first child, in layout order, intersecting the rect, or -1 if none.
+     */
+    int firstVisible(int left, int top, int right, int bottom) {
+        // The first row whose bottom is below the top of the rect.
+        int low = 0;
+        int high = mRowCount;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mRowBottom[mid] <= top) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        for (int row = low; row < mRowCount && mRowTop[row] < bottom; row++) {
+            final int slot = firstSlotEndingAfter(row, left);
+            if (slot >= 0 && mSlotLeft[slot] < right) {
+                return mSlotChild[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the row containing the y, or -1 if the y falls on no row.
+     */
+    private int rowAt(int y) {
+        int low = 0;
+        int high = mRowCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (y < mRowTop[mid]) {
+                high = mid - 1;
+            } else if (y >= mRowBottom[mid]) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the first slot in the row whose right is after the x, or -1 if none.
+     */
+    private int firstSlotEndingAfter(int row, int x) {
+        int low = mRowStart[row];
+        int high = mRowStart[row + 1];
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mSlotRight[mid] <= x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < mRowStart[row + 1] ? low : -1;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.ljj.texttagdemo.tool;
+
+/**
+ * The cumulative x offsets of the tags in a single row, computed once from the cached tag widths.
+ * Used by the single row mode of {@link TagGroupNoEdit} to find the tags intersecting the
+ * scrolled window with binary searches, without any tag view.
+ */
+final class TagStripOffsets {
+    private final int[] mWidths;
+
+    /**
+     * The left of every tag, relative to the start of the row, plus the row width at the end.
+     */
+    private final int[] mLefts;
+
+    private final int mSpacing;
+
+    /**
+     * @param widths  the width of every tag.
+     * @param spacing the horizontal spacing between two tags.
+     */
+    TagStripOffsets(int[] widths, int spacing) {
+        mWidths = widths;
+        mSpacing = spacing;
+        mLefts = new int[widths.length + 1];
+        for (int i = 0; i < widths.length; i++) {
+            mLefts[i + 1] = mLefts[i] + widths[i] + spacing;
+        }
+    }
+
+    /**
+     * Returns the offsets with a tag of the width appended, the other tags keep their offsets.
+     */
+    TagStripOffsets append(int width) {
+        final int[] widths = new int[mWidths.length + 1];
+        System.arraycopy(mWidths, 0, widths, 0, mWidths.length);
+        widths[mWidths.length] = width;
+        return new TagStripOffsets(widths, mSpacing);
+    }
+
+    /**
+     * Returns the offsets without the tag of the index, the tags after it move to the left.
+     */
+    TagStripOffsets remove(int index) {
+        final int[] widths = new int[mWidths.length - 1];
+        System.arraycopy(mWidths, 0, widths, 0, index);
+        System.arraycopy(mWidths, index + 1, widths, index, widths.length - index);
+        return new TagStripOffsets(widths, mSpacing);
+    }
+
+    int size() {
+        return mWidths.length;
+    }
+
+    int getLeft(int index) {
+        return mLefts[index];
+    }
+
+    int getWidth(int index) {
+        return mWidths[index];
+    }
+
+    /**
+     * Returns the width of the whole row, without a trailing spacing.
+     */
+    int getContentWidth() {
+        return mWidths.length == 0 ? 0 : mLefts[mWidths.length] - mSpacing;
+    }
+
+    /**
+     * Returns the first tag whose right is after the x, or the tag count if none.
+     */
+    int firstEndingAfter(int x) {
+        int low = 0;
+        int high = mWidths.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mLefts[mid] + mWidths[mid] <= x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the last tag whose left is before the x, or -1 if none.
+     */
+    int lastStartingBefore(int x) {
+        int low = 0;
+        int high = mWidths.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mLefts[mid] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Returns the tag containing the x, or -1 if the x falls on a spacing or out of the row.
+     */
+    int indexAt(int x) {
+        final int index = firstEndingAfter(x);
+        return index < mWidths.length && mLefts[index] <= x ? index : -1;
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.ljj.texttagdemo.tool;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+
+import com.example.ljj.texttagdemo.R;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The resolved colors and dimensions of a {@link TagGroupNoEdit}.
+ * <p>
+ * Resolving the styled attributes is the most expensive part of inflating a group, and a list of
+ * groups usually resolves the very same style again and again. So the styles resolved without
+ * any per-view attribute are cached per theme, keyed by the style resources and the display
+ * metrics, and shared by all the groups inflated with them.
+ * </p>
+ */
+final class TagStyle {
+    private static final int DEFAULT_BORDER_COLOR = Color.rgb(0x49, 0xC1, 0x20);
+    private static final int DEFAULT_TEXT_COLOR = Color.rgb(0x49, 0xC1, 0x20);
+    private static final int DEFAULT_BACKGROUND_COLOR = Color.WHITE;
+    private static final int DEFAULT_DASH_BORDER_COLOR = Color.rgb(0xAA, 0xAA, 0xAA);
+    private static final int DEFAULT_INPUT_HINT_COLOR = Color.argb(0x80, 0x00, 0x00, 0x00);
+    private static final int DEFAULT_INPUT_TEXT_COLOR = Color.argb(0xDE, 0x00, 0x00, 0x00);
+    private static final int DEFAULT_CHECKED_BORDER_COLOR = Color.rgb(0x49, 0xC1, 0x20);
+    private static final int DEFAULT_CHECKED_TEXT_COLOR = Color.WHITE;
+    private static final int DEFAULT_CHECKED_MARKER_COLOR = Color.WHITE;
+    private static final int DEFAULT_CHECKED_BACKGROUND_COLOR = Color.rgb(0x49, 0xC1, 0x20);
+    private static final int DEFAULT_PRESSED_BACKGROUND_COLOR = Color.rgb(0xED, 0xED, 0xED);
+    private static final float DEFAULT_BORDER_STROKE_WIDTH_DP = 0.5f;
+    private static final float DEFAULT_TEXT_SIZE_SP = 13.0f;
+    private static final float DEFAULT_HORIZONTAL_SPACING_DP = 8.0f;
+    private static final float DEFAULT_VERTICAL_SPACING_DP = 4.0f;
+    private static final float DEFAULT_HORIZONTAL_PADDING_DP = 12.0f;
+    private static final float DEFAULT_VERTICAL_PADDING_DP = 3.0f;
+
+    /**
+     * The resolved styles of every theme, the themes are weakly referenced so the cache never
+     * keeps an activity alive.
+     */
+    private static final Map<Resources.Theme, Map<Key, TagStyle>> sCache = new WeakHashMap<>();
+
+    int borderColor;
+    int textColor;
+    int backgroundColor;
+    int dashBorderColor;
+    int inputHintColor;
+    int inputTextColor;
+    int checkedBorderColor;
+    int checkedTextColor;
+    int checkedMarkerColor;
+    int checkedBackgroundColor;
+    int pressedBackgroundColor;
+    float borderStrokeWidth;
+    float textSize;
+    int horizontalSpacing;
+    int verticalSpacing;
+    int horizontalPadding;
+    int verticalPadding;
+    int maxTagWidth;
+
+    private TagStyle() {
+    }
+
+    TagStyle(TagStyle other) {
+        borderColor = other.borderColor;
+        textColor = other.textColor;
+        backgroundColor = other.backgroundColor;
+        dashBorderColor = other.dashBorderColor;
+        inputHintColor = other.inputHintColor;
+        inputTextColor = other.inputTextColor;
+        checkedBorderColor = other.checkedBorderColor;
+        checkedTextColor = other.checkedTextColor;
+        checkedMarkerColor = other.checkedMarkerColor;
+        checkedBackgroundColor = other.checkedBackgroundColor;
+        pressedBackgroundColor = other.pressedBackgroundColor;
+        borderStrokeWidth = other.borderStrokeWidth;
+        textSize = other.textSize;
+        horizontalSpacing = other.horizontalSpacing;
+        verticalSpacing = other.verticalSpacing;
+        horizontalPadding = other.horizontalPadding;
+        verticalPadding = other.verticalPadding;
+        maxTagWidth = other.maxTagWidth;
+    }
+
+    /**
+     * Returns the default style, without resolving any attribute.
+     *
+     * @param metrics the display metrics to convert the default dimensions with.
+     */
+    static TagStyle defaults(DisplayMetrics metrics) {
+        final TagStyle style = new TagStyle();
+        style.borderColor = DEFAULT_BORDER_COLOR;
+        style.textColor = DEFAULT_TEXT_COLOR;
+        style.backgroundColor = DEFAULT_BACKGROUND_COLOR;
+        style.dashBorderColor = DEFAULT_DASH_BORDER_COLOR;
+        style.inputHintColor = DEFAULT_INPUT_HINT_COLOR;
+        style.inputTextColor = DEFAULT_INPUT_TEXT_COLOR;
+        style.checkedBorderColor = DEFAULT_CHECKED_BORDER_COLOR;
+        style.checkedTextColor = DEFAULT_CHECKED_TEXT_COLOR;
+        style.checkedMarkerColor = DEFAULT_CHECKED_MARKER_COLOR;
+        style.checkedBackgroundColor = DEFAULT_CHECKED_BACKGROUND_COLOR;
+        style.pressedBackgroundColor = DEFAULT_PRESSED_BACKGROUND_COLOR;
+        style.borderStrokeWidth = dp2px(DEFAULT_BORDER_STROKE_WIDTH_DP, metrics);
+        style.textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, DEFAULT_TEXT_SIZE_SP, metrics);
+        style.horizontalSpacing = (int) dp2px(DEFAULT_HORIZONTAL_SPACING_DP, metrics);
+        style.verticalSpacing = (int) dp2px(DEFAULT_VERTICAL_SPACING_DP, metrics);
+        style.horizontalPadding = (int) dp2px(DEFAULT_HORIZONTAL_PADDING_DP, metrics);
+        style.verticalPadding = (int) dp2px(DEFAULT_VERTICAL_PADDING_DP, metrics);
+        return style;
+    }
+
+    /**
+     * Returns the style of a group, from the cache if it has been resolved before for the same
+     * theme, style resources and display metrics.
+     * The returned style is shared and must not be modified.
+     */
+    static TagStyle obtain(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+        if (hasTagAttributes(attrs)) {
+            // Attributes set on the view itself, resolve them for this view only.
+            return resolve(context, attrs, defStyleAttr, defStyleRes);
+        }
+
+        final DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        final Key key = new Key(attrs != null ? attrs.getStyleAttribute() : 0, defStyleAttr, defStyleRes,
+                metrics.density, metrics.scaledDensity);
+        final Resources.Theme theme = context.getTheme();
+        synchronized (sCache) {
+            Map<Key, TagStyle> styles = sCache.get(theme);
+            if (styles == null) {
+                styles = new HashMap<>();
+                sCache.put(theme, styles);
+            }
+            TagStyle style = styles.get(key);
+            if (style == null) {
+                style = resolve(context, attrs, defStyleAttr, defStyleRes);
+                styles.put(key, style);
+            }
+            return style;
+        }
+    }
+
+    /**
+     * Drop all the resolved styles, e.g. after a configuration change.
+     */
+    static void clearCache() {
+        synchronized (sCache) {
+            sCache.clear();
+        }
+    }
+
+    private static TagStyle resolve(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+        final TagStyle style = defaults(context.getResources().getDisplayMetrics());
+        final TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.TagGroup, defStyleAttr, defStyleRes);
+        try {
+            style.borderColor = a.getColor(R.styleable.TagGroup_atg_borderColor, style.borderColor);
+            style.textColor = a.getColor(R.styleable.TagGroup_atg_textColor, style.textColor);
+            style.backgroundColor = a.getColor(R.styleable.TagGroup_atg_backgroundColor, style.backgroundColor);
+            style.dashBorderColor = a.getColor(R.styleable.TagGroup_atg_dashBorderColor, style.dashBorderColor);
+            style.checkedBorderColor = a.getColor(R.styleable.TagGroup_atg_checkedBorderColor, style.checkedBorderColor);
+            style.checkedTextColor = a.getColor(R.styleable.TagGroup_atg_checkedTextColor, style.checkedTextColor);
+            style.checkedMarkerColor = a.getColor(R.styleable.TagGroup_atg_checkedMarkerColor, style.checkedMarkerColor);
+            style.checkedBackgroundColor = a.getColor(R.styleable.TagGroup_atg_checkedBackgroundColor, style.checkedBackgroundColor);
+            style.pressedBackgroundColor = a.getColor(R.styleable.TagGroup_atg_pressedBackgroundColor, style.pressedBackgroundColor);
+            style.borderStrokeWidth = a.getDimension(R.styleable.TagGroup_atg_borderStrokeWidth, style.borderStrokeWidth);
+            style.textSize = a.getDimension(R.styleable.TagGroup_atg_textSize, style.textSize);
+            style.horizontalSpacing = (int) a.getDimension(R.styleable.TagGroup_atg_horizontalSpacing, style.horizontalSpacing);
+            style.verticalSpacing = (int) a.getDimension(R.styleable.TagGroup_atg_verticalSpacing, style.verticalSpacing);
+            style.horizontalPadding = (int) a.getDimension(R.styleable.TagGroup_atg_horizontalPadding, style.horizontalPadding);
+            style.verticalPadding = (int) a.getDimension(R.styleable.TagGroup_atg_verticalPadding, style.verticalPadding);
+            style.maxTagWidth = a.getDimensionPixelSize(R.styleable.TagGroup_atg_maxTagWidth, 0);
+        } finally {
+            a.recycle();
+        }
+        return style;
+    }
+
+    /**
+     * Returns true if any of the tag group attributes is set directly on the view.
+     */
+    private static boolean hasTagAttributes(AttributeSet attrs) {
+        if (attrs == null) {
+            return false;
+        }
+        final int count = attrs.getAttributeCount();
+        for (int i = 0; i < count; i++) {
+            final int nameResource = attrs.getAttributeNameResource(i);
+            for (int attr : R.styleable.TagGroup) {
+                if (attr == nameResource) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static float dp2px(float dp, DisplayMetrics metrics) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, metrics);
+    }
+
+    private static final class Key {
+        final int styleAttribute;
+        final int defStyleAttr;
+        final int defStyleRes;
+        final float density;
+        final float scaledDensity;
+
+        Key(int styleAttribute, int defStyleAttr, int defStyleRes, float density, float scaledDensity) {
+            this.styleAttribute = styleAttribute;
+            this.defStyleAttr = defStyleAttr;
+            this.defStyleRes = defStyleRes;
+            this.density = density;
+            this.scaledDensity = scaledDensity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return styleAttribute == other.styleAttribute && defStyleAttr == other.defStyleAttr
+                    && defStyleRes == other.defStyleRes && density == other.density
+                    && scaledDensity == other.scaledDensity;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = styleAttribute;
+            result = 31 * result + defStyleAttr;
+            result = 31 * result + defStyleRes;
+            result = 31 * result + Float.floatToIntBits(density);
+            result = 31 * result + Float.floatToIntBits(scaledDensity);
+            return result;
+        }
+    }
+}
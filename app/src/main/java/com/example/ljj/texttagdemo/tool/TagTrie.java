@@ -0,0 +1,285 @@
+package com.example.ljj.texttagdemo.tool;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable compressed prefix trie (radix tree) over a tag vocabulary, used to find the tags
+ * starting with the text typed into the INPUT tag.
+ * <p>
+ * Chains of single-child nodes are collapsed into one edge, so the trie has at most two nodes per
+ * tag no matter how long the tags are. The nodes are stored in flat int arrays, their edges are
+ * ranges of one shared char array holding every edge once, and a node ending a tag only keeps
+ * the index of the tag in the vocabulary: the tag strings are not kept by the trie, only the
+ * returned completions are resolved from the vocabulary.
+ * </p>
+ * The trie is immutable once built and may be queried from any thread, as long as the vocabulary
+ * it was built from is not modified.
+ */
+public class TagTrie {
+    /**
+     * The vocabulary the completions are resolved from.
+     */
+    private final List<String> mTags;
+
+    /**
+     * The chars of all the edges, back to back.
+     */
+    private final char[] mEdges;
+
+    /**
+     * The nodes, the root is node 0. The edge from the parent to a node is
+     * <code>mEdges[mEdgeStart[node], mEdgeStart[node] + mEdgeLength[node])</code>, and the
+     * children of a node are the <code>mChildCount[node]</code> nodes from
+     * <code>mFirstChild[node]</code>, sorted by the first char of their edge.
+     */
+    private final int[] mEdgeStart;
+    private final int[] mEdgeLength;
+    private final int[] mFirstChild;
+    private final int[] mChildCount;
+
+    /**
+     * The index in the vocabulary of the tag ending at each node, or -1.
+     */
+    private final int[] mTag;
+
+    private final int mSize;
+
+    /**
+     * Build a trie over a vocabulary. Every tag is decoded once while building without being
+     * kept, only the completions returned by {@link #complete(CharSequence, int)} are kept by
+     * the vocabulary.
+     *
+     * @param vocabulary the vocabulary.
+     */
+    public TagTrie(final TagVocabulary vocabulary) {
+        this(vocabulary.asList(), new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return vocabulary.decode(index);
+            }
+
+            @Override
+            public int size() {
+                return vocabulary.size();
+            }
+        });
+    }
+
+    /**
+     * Build a trie over the tags. Duplicated tags are stored once.
+     *
+     * @param tags the vocabulary, a random access list not modified while the trie is used.
+     */
+    public TagTrie(List<String> tags) {
+        this(tags, tags);
+    }
+
+    /**
+     * @see #TagTrie(List)
+     */
+    public TagTrie(String... tags) {
+        this(Arrays.asList(tags));
+    }
+
+    private TagTrie(List<String> tags, List<String> source) {
+        mTags = tags;
+        final Builder builder = new Builder(source);
+        mEdges = builder.edges.toString().toCharArray();
+        final int count = builder.nodeCount;
+        mEdgeStart = Arrays.copyOf(builder.edgeStart, count);
+        mEdgeLength = Arrays.copyOf(builder.edgeLength, count);
+        mFirstChild = Arrays.copyOf(builder.firstChild, count);
+        mChildCount = Arrays.copyOf(builder.childCount, count);
+        mTag = Arrays.copyOf(builder.tag, count);
+        mSize = builder.size;
+    }
+
+    /**
+     * Returns the number of distinct tags in this trie.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the tags starting with the prefix in lexicographic order.
+     *
+     * @param prefix the typed text.
+     * @param limit  the max number of tags to return.
+     * @return the matching tags, empty if none matches.
+     */
+    public List<String> complete(CharSequence prefix, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>(0);
+        }
+        final List<String> result = new ArrayList<>(Math.min(limit, 16));
+
+        int node = 0;
+        int matched = 0;
+        final int length = prefix.length();
+        while (matched < length) {
+            node = child(node, prefix.charAt(matched));
+            if (node < 0) {
+                return result;
+            }
+            final int start = mEdgeStart[node];
+            final int edgeLength = mEdgeLength[node];
+            final int n = Math.min(edgeLength, length - matched);
+            for (int i = 0; i < n; i++) {
+                if (mEdges[start + i] != prefix.charAt(matched + i)) {
+                    return result;
+                }
+            }
+            matched += edgeLength;
+        }
+        collect(node, limit, result);
+        return result;
+    }
+
+    private void collect(int node, int limit, List<String> out) {
+        if (mTag[node] >= 0) {
+            out.add(mTags.get(mTag[node]));
+        }
+        final int end = mFirstChild[node] + mChildCount[node];
+        for (int child = mFirstChild[node]; child < end; child++) {
+            if (out.size() >= limit) {
+                return;
+            }
+            collect(child, limit, out);
+        }
+    }
+
+    /**
+     * Returns the child of the node whose edge starts with the char, or -1.
+     */
+    private int child(int node, char c) {
+        int low = mFirstChild[node];
+        int high = low + mChildCount[node] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final char midChar = mEdges[mEdgeStart[mid]];
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Lays the nodes out depth first, the children of a node being allocated next to each other
+     * before any of them is built.
+     */
+    private static final class Builder {
+        final String[] texts;
+        final Integer[] order;
+
+        final StringBuilder edges = new StringBuilder();
+        final int[] edgeStart;
+        final int[] edgeLength;
+        final int[] firstChild;
+        final int[] childCount;
+        final int[] tag;
+        int nodeCount = 1;
+        int size;
+
+        Builder(List<String> source) {
+            final int count = source.size();
+            texts = new String[count];
+            order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                texts[i] = source.get(i);
+                order[i] = i;
+            }
+            // Sorted by text, then by index, so the first of duplicated tags is the one kept.
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    final int result = texts[a].compareTo(texts[b]);
+                    return result != 0 ? result : a - b;
+                }
+            });
+
+            // A node per distinct tag, plus at most one branching node per distinct tag and the root.
+            final int capacity = 2 * count + 1;
+            edgeStart = new int[capacity];
+            edgeLength = new int[capacity];
+            firstChild = new int[capacity];
+            childCount = new int[capacity];
+            tag = new int[capacity];
+            build(0, 0, count, 0);
+        }
+
+        /**
+         * Build the node for the sorted tags in [from, to), which all share their first
+         * <code>depth</code> chars.
+         */
+        private void build(int node, int from, int to, int depth) {
+            tag[node] = -1;
+            if (from < to && text(from).length() == depth) {
+                tag[node] = order[from];
+                size++;
+                while (from < to && text(from).length() == depth) {
+                    from++;
+                }
+            }
+
+            // Count the children first, to allocate them next to each other.
+            int children = 0;
+            for (int start = from; start < to; start = groupEnd(start, to, depth)) {
+                children++;
+            }
+            firstChild[node] = nodeCount;
+            childCount[node] = children;
+            nodeCount += children;
+
+            int child = firstChild[node];
+            int start = from;
+            while (start < to) {
+                final int end = groupEnd(start, to, depth);
+                // The tags are sorted, so the common prefix of the group is the one of its bounds.
+                final String first = text(start);
+                final int common = commonPrefix(first, text(end - 1), depth + 1);
+                edgeStart[child] = edges.length();
+                edgeLength[child] = common - depth;
+                edges.append(first, depth, common);
+                build(child, start, end, common);
+                child++;
+                start = end;
+            }
+        }
+
+        /**
+         * Returns the end of the group of sorted tags starting at <code>start</code> which have
+         * the same char at <code>depth</code>.
+         */
+        private int groupEnd(int start, int to, int depth) {
+            final char c = text(start).charAt(depth);
+            int end = start + 1;
+            while (end < to && text(end).charAt(depth) == c) {
+                end++;
+            }
+            return end;
+        }
+
+        private String text(int sorted) {
+            return texts[order[sorted]];
+        }
+
+        private static int commonPrefix(String a, String b, int from) {
+            final int max = Math.min(a.length(), b.length());
+            int i = from;
+            while (i < max && a.charAt(i) == b.charAt(i)) {
+                i++;
+            }
+            return i;
+        }
+    }
+}
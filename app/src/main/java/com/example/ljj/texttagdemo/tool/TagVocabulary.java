@@ -0,0 +1,212 @@
+package com.example.ljj.texttagdemo.tool;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read-only tag vocabulary backed by a memory-mapped binary file.
+ * <p>
+ * Opening a vocabulary only maps the file and validates the header and the offsets, the tag
+ * strings are decoded lazily the first time they are accessed, so a vocabulary of tens of
+ * thousands of tags costs almost nothing until the tags are actually displayed.
+ * </p>
+ * The file layout (big-endian) is:
+ * <pre>
+ * int    magic      'TAGV'
+ * int    version    1
+ * int    count      the number of tags
+ * int[]  offsets    count + 1 byte offsets into the data section
+ * byte[] data       the UTF-8 encoded tags, back to back
+ * </pre>
+ */
+public class TagVocabulary {
+    private static final int MAGIC = 0x54414756;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The mapped vocabulary file.
+     */
+    private final ByteBuffer mBuffer;
+
+    /**
+     * The number of tags in this vocabulary.
+     */
+    private final int mCount;
+
+    /**
+     * The position of the data section in the buffer.
+     */
+    private final int mDataStart;
+
+    /**
+     * The decoded tags, filled in lazily.
+     */
+    private final String[] mDecoded;
+
+    private TagVocabulary(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a tag vocabulary file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported tag vocabulary version " + buffer.getInt(4));
+        }
+        mCount = buffer.getInt(8);
+        if (mCount < 0 || HEADER_SIZE + 4L * (mCount + 1L) > buffer.limit()) {
+            throw new IOException("Corrupt tag vocabulary header");
+        }
+        mDataStart = HEADER_SIZE + 4 * (mCount + 1);
+        // Only the offsets are checked here, so get() can not read outside of the data section,
+        // the tags themselves are still decoded lazily.
+        int previous = 0;
+        for (int i = 0; i <= mCount; i++) {
+            final int offset = buffer.getInt(HEADER_SIZE + 4 * i);
+            if (offset < previous) {
+                throw new IOException("Corrupt tag vocabulary offset at " + i);
+            }
+            previous = offset;
+        }
+        if (mDataStart + (long) previous > buffer.limit()) {
+            throw new IOException("Truncated tag vocabulary data");
+        }
+        mBuffer = buffer;
+        mDecoded = new String[mCount];
+    }
+
+    /**
+     * Map a vocabulary file into memory.
+     *
+     * @param file the vocabulary file written by {@link #write(File, String[])}.
+     * @return the opened vocabulary.
+     * @throws IOException if the file can not be mapped or is not a vocabulary file.
+     */
+    public static TagVocabulary open(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return open(raf.getChannel(), 0, raf.length());
+        } finally {
+            // The mapping stays valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    /**
+     * Map a region of a channel into memory, e.g. an uncompressed asset opened through
+     * <code>AssetFileDescriptor</code>.
+     *
+     * @param channel  the channel to map from.
+     * @param position the start of the vocabulary in the channel.
+     * @param size     the size of the vocabulary in bytes.
+     * @return the opened vocabulary.
+     * @throws IOException if the region can not be mapped or is not a vocabulary file.
+     */
+    public static TagVocabulary open(FileChannel channel, long position, long size) throws IOException {
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        return new TagVocabulary(buffer);
+    }
+
+    /**
+     * Write the tags to a vocabulary file, replacing the file if it exists.
+     *
+     * @param file the file to write.
+     * @param tags the tags to write.
+     * @throws IOException if the file can not be written.
+     */
+    public static void write(File file, String[] tags) throws IOException {
+        final byte[][] encoded = new byte[tags.length][];
+        for (int i = 0; i < tags.length; i++) {
+            encoded[i] = tags[i].getBytes(UTF_8);
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tags.length);
+            int offset = 0;
+            for (byte[] bytes : encoded) {
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the number of tags in this vocabulary.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the tag at the specified position, decoding it on first access.
+     *
+     * @param index the position of the tag.
+     * @return the tag text.
+     */
+    public String get(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mCount);
+        }
+        String tag = mDecoded[index];
+        if (tag == null) {
+            tag = decode(index);
+            // A racing decode produces an equal string, so no locking is needed here.
+            mDecoded[index] = tag;
+        }
+        return tag;
+    }
+
+    /**
+     * Decode the tag at the specified position without keeping it, for a single pass over the
+     * whole vocabulary such as building a {@link TagTrie}.
+     */
+    String decode(int index) {
+        final int start = mBuffer.getInt(HEADER_SIZE + 4 * index);
+        final int end = mBuffer.getInt(HEADER_SIZE + 4 * (index + 1));
+        final byte[] bytes = new byte[end - start];
+        final ByteBuffer source = mBuffer.duplicate();
+        source.position(mDataStart + start);
+        source.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Returns a list view of this vocabulary. Only the elements actually read from the list are
+     * decoded, so e.g. <code>asList().subList(0, 50)</code> can be passed to
+     * {@link TagGroupNoEdit#setTags(List)} without touching the rest of the vocabulary.
+     */
+    public List<String> asList() {
+        return new VocabularyList();
+    }
+
+    private class VocabularyList extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            return TagVocabulary.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return mCount;
+        }
+    }
+}
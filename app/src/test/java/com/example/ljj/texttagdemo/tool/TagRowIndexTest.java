@@ -0,0 +1,95 @@
+package com.example.ljj.texttagdemo.tool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Hit testing and position queries of the row index.
+ */
+public class TagRowIndexTest {
+    /**
+     * Two rows: children 0 and 1 (GONE child 2 between them) at y [0, 20), child 3 at y [30, 50).
+     */
+    private static TagRowIndex twoRows() {
+        final TagRowIndex index = new TagRowIndex();
+        index.begin(4);
+        index.add(0, 0, 0, 40, 20);
+        index.add(1, 50, 0, 90, 18);
+        index.add(3, 0, 30, 60, 50);
+        index.end();
+        return index;
+    }
+
+    @Test
+    public void rows() {
+        final TagRowIndex index = twoRows();
+        assertEquals(2, index.getRowCount());
+        assertEquals(0, index.getRowTop(0));
+        // The bottom of a row is the one of its tallest tag.
+        assertEquals(20, index.getRowBottom(0));
+        assertEquals(30, index.getRowTop(1));
+        assertEquals(50, index.getRowBottom(1));
+    }
+
+    @Test
+    public void rowOf() {
+        final TagRowIndex index = twoRows();
+        assertEquals(0, index.rowOf(0));
+        assertEquals(0, index.rowOf(1));
+        assertEquals(-1, index.rowOf(2));
+        assertEquals(1, index.rowOf(3));
+        assertEquals(-1, index.rowOf(4));
+        assertEquals(-1, index.rowOf(-1));
+    }
+
+    @Test
+    public void rowOfAfterShrinking() {
+        final TagRowIndex index = twoRows();
+        index.begin(2);
+        index.add(0, 0, 0, 40, 20);
+        index.add(1, 0, 30, 40, 50);
+        index.end();
+        assertEquals(1, index.rowOf(1));
+        // Children 2 and 3 were indexed by the previous layout only.
+        assertEquals(-1, index.rowOf(2));
+        assertEquals(-1, index.rowOf(3));
+    }
+
+    @Test
+    public void childAt() {
+        final TagRowIndex index = twoRows();
+        assertEquals(0, index.childAt(0, 0));
+        assertEquals(0, index.childAt(39, 19));
+        assertEquals(1, index.childAt(50, 10));
+        assertEquals(3, index.childAt(59, 49));
+        // The spacing between tags and rows, and outside the rows.
+        assertEquals(-1, index.childAt(45, 10));
+        assertEquals(-1, index.childAt(95, 10));
+        assertEquals(-1, index.childAt(10, 25));
+        assertEquals(-1, index.childAt(10, 50));
+        assertEquals(-1, index.childAt(70, 40));
+    }
+
+    @Test
+    public void firstVisible() {
+        final TagRowIndex index = twoRows();
+        assertEquals(0, index.firstVisible(0, 0, 100, 100));
+        assertEquals(1, index.firstVisible(45, 0, 100, 100));
+        assertEquals(3, index.firstVisible(0, 20, 100, 100));
+        assertEquals(-1, index.firstVisible(95, 0, 100, 100));
+        assertEquals(-1, index.firstVisible(0, 50, 100, 100));
+        assertEquals(-1, index.firstVisible(0, 21, 100, 29));
+    }
+
+    @Test
+    public void empty() {
+        final TagRowIndex index = new TagRowIndex();
+        index.begin(0);
+        index.end();
+        assertEquals(0, index.getRowCount());
+        assertEquals(-1, index.rowOf(0));
+        assertEquals(-1, index.childAt(0, 0));
+        assertEquals(-1, index.firstVisible(0, 0, 100, 100));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.ljj.texttagdemo.tool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Offsets and window queries of the single row mode, and their updates.
+ */
+public class TagStripOffsetsTest {
+    /**
+     * Tags at x [0, 30), [40, 60) and [70, 120).
+     */
+    private static TagStripOffsets threeTags() {
+        return new TagStripOffsets(new int[]{30, 20, 50}, 10);
+    }
+
+    @Test
+    public void offsets() {
+        final TagStripOffsets offsets = threeTags();
+        assertEquals(3, offsets.size());
+        assertEquals(0, offsets.getLeft(0));
+        assertEquals(40, offsets.getLeft(1));
+        assertEquals(70, offsets.getLeft(2));
+        assertEquals(120, offsets.getContentWidth());
+    }
+
+    @Test
+    public void window() {
+        final TagStripOffsets offsets = threeTags();
+        assertEquals(0, offsets.firstEndingAfter(-5));
+        assertEquals(1, offsets.firstEndingAfter(30));
+        assertEquals(3, offsets.firstEndingAfter(120));
+        assertEquals(-1, offsets.lastStartingBefore(0));
+        assertEquals(1, offsets.lastStartingBefore(70));
+        assertEquals(2, offsets.lastStartingBefore(71));
+        assertEquals(1, offsets.indexAt(59));
+        assertEquals(-1, offsets.indexAt(65));
+        assertEquals(-1, offsets.indexAt(120));
+    }
+
+    @Test
+    public void append() {
+        final TagStripOffsets offsets = threeTags().append(15);
+        assertEquals(4, offsets.size());
+        assertEquals(70, offsets.getLeft(2));
+        assertEquals(130, offsets.getLeft(3));
+        assertEquals(15, offsets.getWidth(3));
+        assertEquals(145, offsets.getContentWidth());
+    }
+
+    @Test
+    public void remove() {
+        TagStripOffsets offsets = threeTags().remove(1);
+        assertEquals(2, offsets.size());
+        assertEquals(30, offsets.getWidth(0));
+        assertEquals(40, offsets.getLeft(1));
+        assertEquals(50, offsets.getWidth(1));
+        assertEquals(90, offsets.getContentWidth());
+
+        offsets = offsets.remove(1).remove(0);
+        assertEquals(0, offsets.size());
+        assertEquals(0, offsets.getContentWidth());
+        assertEquals(-1, offsets.indexAt(0));
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.ljj.texttagdemo.tool;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Prefix completions of the trie, checked against a plain scan of the sorted tags.
+ */
+public class TagTrieTest {
+    private static final TagTrie TRIE = new TagTrie(
+            "android", "androidx", "animation", "anime", "java", "javascript", "kotlin", "标签", "标记");
+
+    @Test
+    public void prefixInsideAnEdge() {
+        // "andr" ends inside the collapsed "android" edge.
+        assertEquals(Arrays.asList("android", "androidx"), TRIE.complete("andr", 10));
+        assertEquals(Arrays.asList("animation", "anime"), TRIE.complete("anim", 10));
+        assertEquals(Arrays.asList("标签", "标记"), TRIE.complete("标", 10));
+    }
+
+    @Test
+    public void exactMatchComesFirst() {
+        assertEquals(Arrays.asList("java", "javascript"), TRIE.complete("java", 10));
+        assertEquals(Collections.singletonList("androidx"), TRIE.complete("androidx", 10));
+    }
+
+    @Test
+    public void noMatch() {
+        assertEquals(Collections.<String>emptyList(), TRIE.complete("androidy", 10));
+        assertEquals(Collections.<String>emptyList(), TRIE.complete("androidxx", 10));
+        assertEquals(Collections.<String>emptyList(), TRIE.complete("b", 10));
+        assertEquals(Collections.<String>emptyList(), TRIE.complete("anx", 10));
+    }
+
+    @Test
+    public void emptyPrefixCompletesEverything() {
+        assertEquals(9, TRIE.complete("", 100).size());
+        assertEquals(Arrays.asList("android", "androidx", "animation"), TRIE.complete("", 3));
+    }
+
+    @Test
+    public void duplicatesAreStoredOnce() {
+        final TagTrie trie = new TagTrie("tag", "tags", "tag", "", "", "tags");
+        assertEquals(3, trie.size());
+        assertEquals(Arrays.asList("", "tag", "tags"), trie.complete("", 10));
+        assertEquals(Arrays.asList("tag", "tags"), trie.complete("tag", 10));
+    }
+
+    @Test
+    public void limit() {
+        assertEquals(Collections.singletonList("android"), TRIE.complete("an", 1));
+        assertEquals(Collections.<String>emptyList(), TRIE.complete("an", 0));
+        assertEquals(Collections.<String>emptyList(), TRIE.complete("an", -1));
+        assertEquals(4, TRIE.complete("an", 4).size());
+    }
+
+    @Test
+    public void emptyTrie() {
+        final TagTrie trie = new TagTrie();
+        assertEquals(0, trie.size());
+        assertEquals(Collections.<String>emptyList(), trie.complete("", 10));
+        assertEquals(Collections.<String>emptyList(), trie.complete("a", 10));
+    }
+
+    @Test
+    public void vocabularyTrie() throws Exception {
+        final File file = File.createTempFile("tags", ".vocab");
+        file.deleteOnExit();
+        TagVocabulary.write(file, new String[]{"kotlin", "java", "javascript", "java"});
+        final TagTrie trie = new TagTrie(TagVocabulary.open(file));
+        assertEquals(3, trie.size());
+        assertEquals(Arrays.asList("java", "javascript"), trie.complete("ja", 10));
+    }
+
+    @Test
+    public void matchesScan() {
+        final Random random = new Random(0x7472L);
+        for (int round = 0; round < 200; round++) {
+            final List<String> tags = new ArrayList<>();
+            final int count = random.nextInt(60);
+            for (int i = 0; i < count; i++) {
+                tags.add(randomText(random));
+            }
+            final TagTrie trie = new TagTrie(tags);
+            final TreeSet<String> sorted = new TreeSet<>(tags);
+            assertEquals(sorted.size(), trie.size());
+            for (int i = 0; i < 20; i++) {
+                final String prefix = randomText(random);
+                final int limit = random.nextInt(8);
+                final List<String> expected = new ArrayList<>();
+                for (String tag : sorted) {
+                    if (expected.size() < limit && tag.startsWith(prefix)) {
+                        expected.add(tag);
+                    }
+                }
+                assertEquals(tags + " " + prefix + " " + limit, expected, trie.complete(prefix, limit));
+            }
+        }
+    }
+
+    /**
+     * Returns a short text over a small alphabet, so the tags share long prefixes.
+     */
+    private static String randomText(Random random) {
+        final int length = random.nextInt(6);
+        final StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(3)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.ljj.texttagdemo.tool;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips of the binary vocabulary format, and the rejection of corrupt files.
+ */
+public class TagVocabularyTest {
+    private static final String[] TAGS = {"Android", "", "标签", "tag with spaces", "ü€𝄞"};
+
+    @Test
+    public void roundTrip() throws Exception {
+        final File file = write(TAGS);
+        final TagVocabulary vocabulary = TagVocabulary.open(file);
+        assertEquals(TAGS.length, vocabulary.size());
+        // Decoded out of order, each tag is decoded on its own.
+        for (int i = TAGS.length - 1; i >= 0; i--) {
+            assertEquals(TAGS[i], vocabulary.get(i));
+        }
+        assertEquals(Arrays.asList(TAGS), vocabulary.asList());
+    }
+
+    @Test
+    public void roundTripEmpty() throws Exception {
+        final TagVocabulary vocabulary = TagVocabulary.open(write(new String[0]));
+        assertEquals(0, vocabulary.size());
+        assertEquals(0, vocabulary.asList().size());
+    }
+
+    @Test
+    public void asListSubListOnlyDecodesItsTags() throws Exception {
+        final File file = write(TAGS);
+        final List<String> head = TagVocabulary.open(file).asList().subList(0, 2);
+        assertEquals(Arrays.asList(TAGS[0], TAGS[1]), head);
+    }
+
+    @Test
+    public void getOutOfRange() throws Exception {
+        final TagVocabulary vocabulary = TagVocabulary.open(write(TAGS));
+        try {
+            vocabulary.get(TAGS.length);
+            fail("get past the end");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    @Test
+    public void rejectsBadMagic() throws Exception {
+        final File file = write(TAGS);
+        patchInt(file, 0, 0x12345678);
+        assertRejected(file);
+    }
+
+    @Test
+    public void rejectsHugeCount() throws Exception {
+        final File file = write(TAGS);
+        patchInt(file, 8, Integer.MAX_VALUE);
+        assertRejected(file);
+    }
+
+    @Test
+    public void rejectsNegativeCount() throws Exception {
+        final File file = write(TAGS);
+        patchInt(file, 8, -1);
+        assertRejected(file);
+    }
+
+    @Test
+    public void rejectsDecreasingOffsets() throws Exception {
+        final File file = write(TAGS);
+        // The offset of the second tag, before the one of the first tag.
+        patchInt(file, 16, -4);
+        assertRejected(file);
+    }
+
+    @Test
+    public void rejectsTruncatedData() throws Exception {
+        final File file = write(TAGS);
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+        assertRejected(file);
+    }
+
+    @Test
+    public void rejectsTruncatedHeader() throws Exception {
+        final File file = write(TAGS);
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(6);
+        } finally {
+            raf.close();
+        }
+        assertRejected(file);
+    }
+
+    private static File write(String[] tags) throws IOException {
+        final File file = File.createTempFile("tags", ".vocab");
+        file.deleteOnExit();
+        TagVocabulary.write(file, tags);
+        return file;
+    }
+
+    private static void patchInt(File file, long position, int value) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(position);
+            raf.writeInt(value);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void assertRejected(File file) {
+        try {
+            TagVocabulary.open(file);
+            fail("opened a corrupt vocabulary");
+        } catch (IOException expected) {
+        }
+    }
+}
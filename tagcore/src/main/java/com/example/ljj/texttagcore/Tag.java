@@ -0,0 +1,45 @@
+package com.example.ljj.texttagcore;
+
+/**
+ * An immutable tag, identified by its id. The id of a tag created from a text is the text itself,
+ * like the tags of <code>TagGroupNoEdit</code>.
+ */
+public final class Tag {
+    private final String id;
+    private final String text;
+
+    public Tag(String text) {
+        this(text, text);
+    }
+
+    public Tag(String id, String text) {
+        if (id == null || text == null) {
+            throw new NullPointerException("id and text must not be null");
+        }
+        this.id = id;
+        this.text = text;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Tag && id.equals(((Tag) o).id) && text.equals(((Tag) o).text);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * id.hashCode() + text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
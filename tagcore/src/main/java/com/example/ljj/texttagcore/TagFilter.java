@@ -0,0 +1,12 @@
+package com.example.ljj.texttagcore;
+
+/**
+ * Interface definition for choosing tags.
+ */
+public interface TagFilter {
+    /**
+     * @param tag the tag.
+     * @return true to choose the tag, false otherwise.
+     */
+    boolean accept(Tag tag);
+}
@@ -0,0 +1,233 @@
+package com.example.ljj.texttagcore;
+
+import java.util.Arrays;
+
+/**
+ * The precomputed layout of a tag group for a given width and style: the size and position of
+ * every tag, the row breaks and the measured size of the group. Produced by
+ * {@link TagLineBreaker}, stored with {@link TagLayoutCodec}, and adopted by
+ * <code>TagGroupNoEdit</code> without measuring any tag.
+ * <p>
+ * The positions are relative to the group, padding included. A GONE tag has no row and is laid
+ * out at 0, 0.
+ * </p>
+ */
+public final class TagLayout {
+    /**
+     * The width and the group paddings the layout was computed for.
+     */
+    final int width;
+    final int paddingLeft;
+    final int paddingTop;
+    final int paddingRight;
+    final int paddingBottom;
+
+    /**
+     * The spacings and the centering the layout was computed with.
+     */
+    final int horizontalSpacing;
+    final int verticalSpacing;
+    final boolean center;
+
+    /**
+     * The key of the tag text style the tag sizes were measured with, see {@link #styleKey}.
+     */
+    final int styleKey;
+
+    final int measuredWidth;
+    final int measuredHeight;
+
+    final int[] widths;
+    final int[] heights;
+    final boolean[] gone;
+    final int[] lefts;
+    final int[] tops;
+
+    /**
+     * The index of the first tag of every row, plus the tag count at the end.
+     */
+    final int[] rowStarts;
+
+    TagLayout(int width, int paddingLeft, int paddingTop, int paddingRight, int paddingBottom,
+              int horizontalSpacing, int verticalSpacing, boolean center, int styleKey,
+              int measuredWidth, int measuredHeight,
+              int[] widths, int[] heights, boolean[] gone, int[] lefts, int[] tops, int[] rowStarts) {
+        this.width = width;
+        this.paddingLeft = paddingLeft;
+        this.paddingTop = paddingTop;
+        this.paddingRight = paddingRight;
+        this.paddingBottom = paddingBottom;
+        this.horizontalSpacing = horizontalSpacing;
+        this.verticalSpacing = verticalSpacing;
+        this.center = center;
+        this.styleKey = styleKey;
+        this.measuredWidth = measuredWidth;
+        this.measuredHeight = measuredHeight;
+        this.widths = widths;
+        this.heights = heights;
+        this.gone = gone;
+        this.lefts = lefts;
+        this.tops = tops;
+        this.rowStarts = rowStarts;
+    }
+
+    /**
+     * Returns the key of a tag text style. A layout is only valid for the tags measured with the
+     * same text size, tag paddings and max tag width.
+     *
+     * @param textSize          the text size in pixels.
+     * @param horizontalPadding the horizontal tag padding in pixels.
+     * @param verticalPadding   the vertical tag padding in pixels.
+     * @param maxTagWidth       the max tag width in pixels, 0 means no limit.
+     * @param typeface          the name of the typeface, or null for the default one.
+     */
+    public static int styleKey(float textSize, int horizontalPadding, int verticalPadding,
+                               int maxTagWidth, String typeface) {
+        int result = Float.floatToIntBits(textSize);
+        result = 31 * result + horizontalPadding;
+        result = 31 * result + verticalPadding;
+        result = 31 * result + maxTagWidth;
+        result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+        return result;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getPaddingLeft() {
+        return paddingLeft;
+    }
+
+    public int getPaddingTop() {
+        return paddingTop;
+    }
+
+    public int getPaddingRight() {
+        return paddingRight;
+    }
+
+    public int getPaddingBottom() {
+        return paddingBottom;
+    }
+
+    public int getHorizontalSpacing() {
+        return horizontalSpacing;
+    }
+
+    public int getVerticalSpacing() {
+        return verticalSpacing;
+    }
+
+    public boolean isCenter() {
+        return center;
+    }
+
+    public int getStyleKey() {
+        return styleKey;
+    }
+
+    public int getMeasuredWidth() {
+        return measuredWidth;
+    }
+
+    public int getMeasuredHeight() {
+        return measuredHeight;
+    }
+
+    public int getTagCount() {
+        return widths.length;
+    }
+
+    public int getTagWidth(int index) {
+        return widths[index];
+    }
+
+    public int getTagHeight(int index) {
+        return heights[index];
+    }
+
+    public boolean isGone(int index) {
+        return gone[index];
+    }
+
+    public int getTagLeft(int index) {
+        return lefts[index];
+    }
+
+    public int getTagTop(int index) {
+        return tops[index];
+    }
+
+    public int getRowCount() {
+        return rowStarts.length - 1;
+    }
+
+    /**
+     * Returns the index of the first tag of the row, GONE tags included.
+     */
+    public int getRowStart(int row) {
+        return rowStarts[row];
+    }
+
+    /**
+     * Returns the index after the last tag of the row.
+     */
+    public int getRowEnd(int row) {
+        return rowStarts[row + 1];
+    }
+
+    /**
+     * Returns the index of the visible tag containing the point, or -1 if none.
+     */
+    public int tagAt(int x, int y) {
+        // The last row starting above the point, rows are ordered from top to bottom.
+        int low = 0;
+        int high = getRowCount() - 1;
+        int row = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (tops[rowStarts[mid]] <= y) {
+                row = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (row < 0) {
+            return -1;
+        }
+        for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++) {
+            if (!gone[i] && x >= lefts[i] && x < lefts[i] + widths[i] && y < tops[i] + heights[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TagLayout)) {
+            return false;
+        }
+        final TagLayout other = (TagLayout) o;
+        return width == other.width && paddingLeft == other.paddingLeft && paddingTop == other.paddingTop
+                && paddingRight == other.paddingRight && paddingBottom == other.paddingBottom
+                && horizontalSpacing == other.horizontalSpacing && verticalSpacing == other.verticalSpacing
+                && center == other.center && styleKey == other.styleKey
+                && measuredWidth == other.measuredWidth && measuredHeight == other.measuredHeight
+                && Arrays.equals(widths, other.widths) && Arrays.equals(heights, other.heights)
+                && Arrays.equals(gone, other.gone) && Arrays.equals(lefts, other.lefts)
+                && Arrays.equals(tops, other.tops) && Arrays.equals(rowStarts, other.rowStarts);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = width;
+        result = 31 * result + styleKey;
+        result = 31 * result + measuredHeight;
+        result = 31 * result + Arrays.hashCode(lefts);
+        result = 31 * result + Arrays.hashCode(tops);
+        return result;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.ljj.texttagcore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Reads and writes {@link TagLayout} in a compact binary format, so a backend can lay tags out
+ * ahead of time and ship the result to the app.
+ * <p>
+ * All the integers are written as unsigned LEB128 varints, the signed ones zigzag encoded, so
+ * a tag usually takes 4 to 8 bytes. The tops are not stored, they follow from the row breaks
+ * and the tag heights.
+ * </p>
+ */
+public final class TagLayoutCodec {
+    private static final int MAGIC = 0x5441474C; // 'TAGL'
+    private static final int VERSION = 1;
+
+    private static final int FLAG_CENTER = 1;
+
+    private TagLayoutCodec() {
+    }
+
+    public static void write(TagLayout layout, OutputStream output) throws IOException {
+        final DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(MAGIC);
+        writeVarInt(out, VERSION);
+        writeVarInt(out, layout.center ? FLAG_CENTER : 0);
+        writeVarInt(out, layout.width);
+        writeVarInt(out, layout.paddingLeft);
+        writeVarInt(out, layout.paddingTop);
+        writeVarInt(out, layout.paddingRight);
+        writeVarInt(out, layout.paddingBottom);
+        writeVarInt(out, layout.horizontalSpacing);
+        writeVarInt(out, layout.verticalSpacing);
+        out.writeInt(layout.styleKey);
+        writeVarInt(out, layout.measuredWidth);
+        writeVarInt(out, layout.measuredHeight);
+
+        final int count = layout.widths.length;
+        writeVarInt(out, count);
+        for (int i = 0; i < count; i++) {
+            // The GONE flag is packed in the lowest bit of the width.
+            writeVarInt(out, layout.widths[i] << 1 | (layout.gone[i] ? 1 : 0));
+            writeVarInt(out, layout.heights[i]);
+            writeVarInt(out, zigzag(layout.lefts[i]));
+        }
+
+        final int rowCount = layout.rowStarts.length - 1;
+        writeVarInt(out, rowCount);
+        for (int row = 1; row < rowCount; row++) {
+            writeVarInt(out, layout.rowStarts[row] - layout.rowStarts[row - 1]);
+        }
+        out.flush();
+    }
+
+    public static TagLayout read(InputStream input) throws IOException {
+        final DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a tag layout");
+        }
+        final int version = readVarInt(in);
+        if (version != VERSION) {
+            throw new IOException("Unsupported tag layout version " + version);
+        }
+        final int flags = readVarInt(in);
+        final int width = readVarInt(in);
+        final int paddingLeft = readVarInt(in);
+        final int paddingTop = readVarInt(in);
+        final int paddingRight = readVarInt(in);
+        final int paddingBottom = readVarInt(in);
+        final int horizontalSpacing = readVarInt(in);
+        final int verticalSpacing = readVarInt(in);
+        final int styleKey = in.readInt();
+        final int measuredWidth = readVarInt(in);
+        final int measuredHeight = readVarInt(in);
+
+        final int count = readVarInt(in);
+        if (count < 0) {
+            throw new IOException("Corrupt tag layout count " + count);
+        }
+        // Not allocated upfront for a corrupt count, the arrays grow with the tags actually read.
+        int capacity = Math.min(count, 256);
+        int[] widths = new int[capacity];
+        int[] heights = new int[capacity];
+        boolean[] gone = new boolean[capacity];
+        int[] lefts = new int[capacity];
+        for (int i = 0; i < count; i++) {
+            if (i == capacity) {
+                capacity = (int) Math.min(count, 2L * capacity);
+                widths = Arrays.copyOf(widths, capacity);
+                heights = Arrays.copyOf(heights, capacity);
+                gone = Arrays.copyOf(gone, capacity);
+                lefts = Arrays.copyOf(lefts, capacity);
+            }
+            final int packed = readVarInt(in);
+            widths[i] = packed >>> 1;
+            gone[i] = (packed & 1) != 0;
+            heights[i] = readVarInt(in);
+            if (heights[i] < 0) {
+                throw new IOException("Corrupt tag layout height at " + i);
+            }
+            lefts[i] = unzigzag(readVarInt(in));
+        }
+
+        final int rowCount = readVarInt(in);
+        if (rowCount < 0 || rowCount > count) {
+            throw new IOException("Corrupt tag layout rows");
+        }
+        final int[] rowStarts = new int[rowCount + 1];
+        for (int row = 1; row < rowCount; row++) {
+            // Every row holds at least one tag.
+            final int delta = readVarInt(in);
+            if (delta <= 0 || delta >= count - rowStarts[row - 1]) {
+                throw new IOException("Corrupt tag layout row " + row);
+            }
+            rowStarts[row] = rowStarts[row - 1] + delta;
+        }
+        rowStarts[0] = rowCount > 0 ? 0 : count;
+        rowStarts[rowCount] = count;
+
+        // Rebuild the tops from the row heights.
+        final int[] tops = new int[count];
+        int rowTop = paddingTop;
+        for (int row = 0; row < rowCount; row++) {
+            int rowHeight = 0;
+            for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++) {
+                if (!gone[i]) {
+                    tops[i] = rowTop;
+                    rowHeight = Math.max(rowHeight, heights[i]);
+                }
+            }
+            rowTop += rowHeight + verticalSpacing;
+        }
+
+        return new TagLayout(width, paddingLeft, paddingTop, paddingRight, paddingBottom,
+                horizontalSpacing, verticalSpacing, (flags & FLAG_CENTER) != 0, styleKey,
+                measuredWidth, measuredHeight, widths, heights, gone, lefts, tops, rowStarts);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
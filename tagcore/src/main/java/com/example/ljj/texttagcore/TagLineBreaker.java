@@ -0,0 +1,252 @@
+package com.example.ljj.texttagcore;
+
+import java.util.Arrays;
+
+/**
+ * Breaks tags into rows like <code>TagGroupNoEdit</code> does in its wrap mode: the tags are
+ * placed from left to right, and a tag which does not fit in the rest of the row starts a new
+ * row, unless it is the first tag of the row. A row is as high as its highest tag, and when
+ * centering, every row is centered in the full width.
+ */
+public class TagLineBreaker {
+    private int horizontalSpacing;
+    private int verticalSpacing;
+    private int paddingLeft;
+    private int paddingTop;
+    private int paddingRight;
+    private int paddingBottom;
+    private boolean center;
+    private int styleKey;
+
+    public TagLineBreaker setSpacing(int horizontalSpacing, int verticalSpacing) {
+        this.horizontalSpacing = horizontalSpacing;
+        this.verticalSpacing = verticalSpacing;
+        return this;
+    }
+
+    public TagLineBreaker setPadding(int left, int top, int right, int bottom) {
+        paddingLeft = left;
+        paddingTop = top;
+        paddingRight = right;
+        paddingBottom = bottom;
+        return this;
+    }
+
+    public TagLineBreaker setCenter(boolean center) {
+        this.center = center;
+        return this;
+    }
+
+    /**
+     * @param styleKey the key of the style the tag sizes are measured with, see
+     *                 {@link TagLayout#styleKey}.
+     */
+    public TagLineBreaker setStyleKey(int styleKey) {
+        this.styleKey = styleKey;
+        return this;
+    }
+
+    /**
+     * @see #layout(int[], int[], boolean[], int)
+     */
+    public TagLayout layout(int[] widths, int[] heights, int width) {
+        return layout(widths, heights, new boolean[widths.length], width);
+    }
+
+    /**
+     * Lay the tags out in the width.
+     *
+     * @param widths  the measured width of every tag.
+     * @param heights the measured height of every tag.
+     * @param gone    whether every tag is GONE, a GONE tag takes no space.
+     * @param width   the width of the group, padding included.
+     * @return the layout.
+     */
+    public TagLayout layout(int[] widths, int[] heights, boolean[] gone, int width) {
+        final int count = widths.length;
+        final int[] lefts = new int[count];
+        final int[] tops = new int[count];
+        final int[] rowStarts = new int[count + 1];
+        final int right = width - paddingRight;
+
+        int rowCount = 0;
+        int rowStart = 0; // The first tag of the current row, GONE tags included.
+        int rowTop = paddingTop;
+        int rowHeight = 0;
+        int x = paddingLeft;
+        int maxRowWidth = 0;
+        for (int i = 0; i < count; i++) {
+            if (gone[i]) {
+                continue;
+            }
+            if (rowCount == 0 || (x > paddingLeft && x + widths[i] > right)) {
+                if (rowCount > 0) {
+                    maxRowWidth = Math.max(maxRowWidth, closeRow(rowStart, i, x, width, widths, gone, lefts));
+                    rowTop += rowHeight + verticalSpacing;
+                    rowStarts[rowCount] = i;
+                }
+                rowCount++;
+                rowStart = i;
+                rowHeight = 0;
+                x = paddingLeft;
+            }
+            lefts[i] = x;
+            tops[i] = rowTop;
+            rowHeight = Math.max(rowHeight, heights[i]);
+            x += widths[i] + horizontalSpacing;
+        }
+        if (rowCount > 0) {
+            maxRowWidth = Math.max(maxRowWidth, closeRow(rowStart, count, x, width, widths, gone, lefts));
+        }
+        rowStarts[0] = rowCount > 0 ? 0 : count;
+        rowStarts[rowCount] = count;
+
+        final int measuredWidth = rowCount > 1 ? width : maxRowWidth + paddingLeft + paddingRight;
+        final int measuredHeight = paddingTop + paddingBottom + (rowCount > 0 ? rowTop - paddingTop + rowHeight : 0);
+        return new TagLayout(width, paddingLeft, paddingTop, paddingRight, paddingBottom,
+                horizontalSpacing, verticalSpacing, center, styleKey, measuredWidth, measuredHeight,
+                widths.clone(), heights.clone(), gone.clone(), lefts, tops,
+                Arrays.copyOf(rowStarts, rowCount + 1));
+    }
+
+    /**
+     * Move a tag and reflow the rows from the one before the source or the target, until a row
+     * starts at the same tag and top as before, the rows after it are kept as they are. The tag
+     * sizes are those of the layout, no tag is measured.
+     *
+     * @param layout the layout to move the tag in, its spacings, paddings and centering are kept.
+     * @param from   the index of the tag to move.
+     * @param to     the index of the tag after the move.
+     * @return the layout with the tag moved, or the layout itself if the tag is not moved.
+     */
+    public static TagLayout move(TagLayout layout, int from, int to) {
+        if (from == to) {
+            return layout;
+        }
+        final int count = layout.widths.length;
+        final int[] widths = move(layout.widths.clone(), from, to);
+        final int[] heights = move(layout.heights.clone(), from, to);
+        final boolean[] gone = layout.gone.clone();
+        final boolean moved = gone[from];
+        if (from < to) {
+            System.arraycopy(gone, from + 1, gone, from, to - from);
+        } else {
+            System.arraycopy(gone, to, gone, to + 1, from - to);
+        }
+        gone[to] = moved;
+        final int[] lefts = move(layout.lefts.clone(), from, to);
+        final int[] tops = move(layout.tops.clone(), from, to);
+
+        final int[] oldStarts = layout.rowStarts;
+        final int oldRowCount = oldStarts.length - 1;
+        final int low = Math.min(from, to);
+        final int high = Math.max(from, to);
+
+        // The rows before the one before the first moved tag keep their tags.
+        int row = 0;
+        while (row + 1 < oldRowCount && oldStarts[row + 1] <= low) {
+            row++;
+        }
+        row = Math.max(0, row - 1);
+
+        final int paddingLeft = layout.paddingLeft;
+        final int right = layout.width - layout.paddingRight;
+        final int[] rowStarts = new int[count + 1];
+        System.arraycopy(oldStarts, 0, rowStarts, 0, row);
+
+        int rowCount = row;
+        int oldRow = row;
+        int rowStart = 0;
+        int rowTop = row == 0 ? layout.paddingTop : layout.tops[oldStarts[row]];
+        int rowHeight = 0;
+        int rowWidth = 0;
+        int x = paddingLeft;
+        for (int i = row == 0 ? 0 : oldStarts[row]; i < count; i++) {
+            if (gone[i]) {
+                lefts[i] = 0;
+                tops[i] = 0;
+                continue;
+            }
+            if (rowCount == row || (x > paddingLeft && x + widths[i] > right)) {
+                if (rowCount > row) {
+                    rowWidth = closeRow(layout, rowStart, i, x, widths, gone, lefts);
+                    rowTop += rowHeight + layout.verticalSpacing;
+                    while (oldRow < oldRowCount && oldStarts[oldRow] < i) {
+                        oldRow++;
+                    }
+                    if (i > high && oldRow < oldRowCount && oldStarts[oldRow] == i && layout.tops[i] == rowTop) {
+                        // Same row as before, the rest of the layout is unchanged.
+                        System.arraycopy(oldStarts, oldRow, rowStarts, rowCount, oldRowCount - oldRow + 1);
+                        return new TagLayout(layout.width, paddingLeft, layout.paddingTop, layout.paddingRight,
+                                layout.paddingBottom, layout.horizontalSpacing, layout.verticalSpacing,
+                                layout.center, layout.styleKey, layout.measuredWidth, layout.measuredHeight,
+                                widths, heights, gone, lefts, tops,
+                                Arrays.copyOf(rowStarts, rowCount + oldRowCount - oldRow + 1));
+                    }
+                }
+                // The first row starts at the first tag, like in layout().
+                rowStarts[rowCount] = rowCount == 0 ? 0 : i;
+                rowCount++;
+                rowStart = i;
+                rowHeight = 0;
+                x = paddingLeft;
+            }
+            lefts[i] = x;
+            tops[i] = rowTop;
+            rowHeight = Math.max(rowHeight, heights[i]);
+            x += widths[i] + layout.horizontalSpacing;
+        }
+        if (rowCount > row) {
+            rowWidth = closeRow(layout, rowStart, count, x, widths, gone, lefts);
+        }
+        rowStarts[rowCount] = count;
+
+        final int measuredWidth = rowCount > 1 ? layout.width : rowWidth + paddingLeft + layout.paddingRight;
+        final int measuredHeight = layout.paddingTop + layout.paddingBottom
+                + (rowCount > 0 ? rowTop - layout.paddingTop + rowHeight : 0);
+        return new TagLayout(layout.width, paddingLeft, layout.paddingTop, layout.paddingRight,
+                layout.paddingBottom, layout.horizontalSpacing, layout.verticalSpacing, layout.center,
+                layout.styleKey, measuredWidth, measuredHeight, widths, heights, gone, lefts, tops,
+                Arrays.copyOf(rowStarts, rowCount + 1));
+    }
+
+    private static int[] move(int[] values, int from, int to) {
+        final int moved = values[from];
+        if (from < to) {
+            System.arraycopy(values, from + 1, values, from, to - from);
+        } else {
+            System.arraycopy(values, to, values, to + 1, from - to);
+        }
+        values[to] = moved;
+        return values;
+    }
+
+    private int closeRow(int from, int to, int x, int width, int[] widths, boolean[] gone, int[] lefts) {
+        return closeRow(from, to, x, width, paddingLeft, horizontalSpacing, center, widths, gone, lefts);
+    }
+
+    private static int closeRow(TagLayout layout, int from, int to, int x, int[] widths, boolean[] gone, int[] lefts) {
+        return closeRow(from, to, x, layout.width, layout.paddingLeft, layout.horizontalSpacing, layout.center,
+                widths, gone, lefts);
+    }
+
+    /**
+     * Center the row if needed.
+     *
+     * @return the width of the row.
+     */
+    private static int closeRow(int from, int to, int x, int width, int paddingLeft, int horizontalSpacing,
+                                boolean center, int[] widths, boolean[] gone, int[] lefts) {
+        final int rowWidth = x - paddingLeft - horizontalSpacing;
+        if (center) {
+            int left = (width - rowWidth) / 2;
+            for (int i = from; i < to; i++) {
+                if (!gone[i]) {
+                    lefts[i] = left;
+                    left += widths[i] + horizontalSpacing;
+                }
+            }
+        }
+        return rowWidth;
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.ljj.texttagcore;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The checked state of a list of tags, with the rules of <code>TagGroupNoEdit</code>: at most
+ * <code>maxChooseCount</code> tags are checked, 0 means no limit, and the bulk operations stop
+ * checking in list order once the limit is reached.
+ * <p>
+ * The rules only go through the accessors, so the checked state may be kept elsewhere, like in
+ * the tag views of <code>TagGroupNoEdit</code>. {@link #of(List)} keeps it in an array.
+ * </p>
+ */
+public abstract class TagSelection {
+    private int maxChooseCount;
+
+    /**
+     * Returns a selection of the tags, all unchecked.
+     */
+    public static TagSelection of(List<Tag> tags) {
+        return new ListSelection(tags);
+    }
+
+    /**
+     * Returns the number of tags, checkable or not.
+     */
+    public abstract int size();
+
+    /**
+     * Returns the tag at the index, only called for the checkable tags.
+     */
+    public abstract Tag getTag(int index);
+
+    public abstract boolean isChecked(int index);
+
+    public abstract int getCheckedCount();
+
+    /**
+     * Returns false for a tag the bulk operations never check, e.g. a text field among the tags.
+     * All the tags are checkable by default.
+     */
+    public boolean isCheckable(int index) {
+        return true;
+    }
+
+    /**
+     * Check or uncheck the tag, updating the checked count. Only called to change the state.
+     */
+    protected abstract void set(int index, boolean checked);
+
+    public int getMaxChooseCount() {
+        return maxChooseCount;
+    }
+
+    /**
+     * Set the max number of checked tags, the tags already checked stay checked.
+     *
+     * @param maxChooseCount the limit, 0 means no limit.
+     */
+    public void setMaxChooseCount(int maxChooseCount) {
+        this.maxChooseCount = maxChooseCount;
+    }
+
+    /**
+     * Returns true if one more tag can be checked.
+     */
+    public boolean canCheck() {
+        return maxChooseCount <= 0 || getCheckedCount() < maxChooseCount;
+    }
+
+    /**
+     * Toggle the tag like a click does.
+     *
+     * @param index the index of the tag.
+     * @return false if the tag could not be checked because the limit is reached.
+     */
+    public boolean toggle(int index) {
+        if (isChecked(index)) {
+            set(index, false);
+            return true;
+        }
+        if (!canCheck()) {
+            return false;
+        }
+        set(index, true);
+        return true;
+    }
+
+    /**
+     * Check all tags, stopping at the limit.
+     *
+     * @return the number of changed tags.
+     */
+    public int checkAll() {
+        int budget = budget(getCheckedCount());
+        int changed = 0;
+        final int size = size();
+        for (int i = 0; i < size && budget > 0; i++) {
+            if (isCheckable(i) && !isChecked(i)) {
+                set(i, true);
+                budget--;
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Uncheck all tags.
+     *
+     * @return the number of changed tags.
+     */
+    public int clear() {
+        int changed = 0;
+        final int size = size();
+        for (int i = 0; i < size && getCheckedCount() > 0; i++) {
+            if (isChecked(i)) {
+                set(i, false);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Check the unchecked tags and uncheck the checked tags, stopping to check at the limit. The
+     * tags are unchecked first, so the checked count never exceeds the limit during the pass.
+     *
+     * @return the number of changed tags.
+     */
+    public int invert() {
+        final int size = size();
+        final boolean[] check = new boolean[size];
+        int changed = 0;
+        for (int i = 0; i < size; i++) {
+            if (!isCheckable(i)) {
+                continue;
+            }
+            if (isChecked(i)) {
+                set(i, false);
+                changed++;
+            } else {
+                check[i] = true;
+            }
+        }
+        return changed + checkMarked(check);
+    }
+
+    /**
+     * Check exactly the tags accepted by the filter, up to the limit in list order. The other
+     * tags are unchecked first, so the checked count never exceeds the limit during the pass.
+     *
+     * @return the number of changed tags.
+     */
+    public int setChecked(TagFilter filter) {
+        final int size = size();
+        final boolean[] check = new boolean[size];
+        int budget = budget(0);
+        int changed = 0;
+        for (int i = 0; i < size; i++) {
+            if (!isCheckable(i)) {
+                continue;
+            }
+            if (budget > 0 && filter.accept(getTag(i))) {
+                budget--;
+                check[i] = !isChecked(i);
+            } else if (isChecked(i)) {
+                set(i, false);
+                changed++;
+            }
+        }
+        return changed + checkMarked(check);
+    }
+
+    /**
+     * Check exactly the tags whose id is in the collection, up to the limit in list order.
+     *
+     * @return the number of changed tags.
+     */
+    public int setCheckedIds(final Collection<String> ids) {
+        return setChecked(new TagFilter() {
+            @Override
+            public boolean accept(Tag tag) {
+                return ids.contains(tag.getId());
+            }
+        });
+    }
+
+    /**
+     * Check the tags accepted by the filter, up to the limit in list order. Unlike
+     * {@link #setChecked(TagFilter)}, the other tags are left as they are.
+     *
+     * @return the number of changed tags.
+     */
+    public int check(TagFilter filter) {
+        int budget = budget(getCheckedCount());
+        int changed = 0;
+        final int size = size();
+        for (int i = 0; i < size && budget > 0; i++) {
+            if (isCheckable(i) && !isChecked(i) && filter.accept(getTag(i))) {
+                set(i, true);
+                budget--;
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Check the tags whose id is in the collection, up to the limit in list order, and leave the
+     * other tags as they are.
+     *
+     * @return the number of changed tags.
+     */
+    public int checkIds(final Collection<String> ids) {
+        return check(new TagFilter() {
+            @Override
+            public boolean accept(Tag tag) {
+                return ids.contains(tag.getId());
+            }
+        });
+    }
+
+    /**
+     * Check the marked tags in list order, stopping at the limit.
+     *
+     * @return the number of changed tags.
+     */
+    private int checkMarked(boolean[] check) {
+        int budget = budget(getCheckedCount());
+        int changed = 0;
+        for (int i = 0; i < check.length && budget > 0; i++) {
+            if (check[i]) {
+                set(i, true);
+                budget--;
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private int budget(int alreadyChecked) {
+        return maxChooseCount > 0 ? maxChooseCount - alreadyChecked : Integer.MAX_VALUE;
+    }
+
+    private static final class ListSelection extends TagSelection {
+        private final List<Tag> tags;
+        private final boolean[] checked;
+        private int checkedCount;
+
+        ListSelection(List<Tag> tags) {
+            this.tags = tags;
+            this.checked = new boolean[tags.size()];
+        }
+
+        @Override
+        public int size() {
+            return checked.length;
+        }
+
+        @Override
+        public Tag getTag(int index) {
+            return tags.get(index);
+        }
+
+        @Override
+        public boolean isChecked(int index) {
+            return checked[index];
+        }
+
+        @Override
+        public int getCheckedCount() {
+            return checkedCount;
+        }
+
+        @Override
+        protected void set(int index, boolean check) {
+            checked[index] = check;
+            checkedCount += check ? 1 : -1;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.example.ljj.texttagcore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persists the checked tags by id in a small append-only journal: every check or uncheck is
+ * appended as one record by a background thread, instead of rewriting the whole selection. When
+ * the journal holds too many records for the selection it describes, it is compacted into one
+ * check record per checked tag, written to a temporary file renamed over the journal.
+ * <p>
+ * The journal is read once in {@link #open(File)}, in a single pass replaying the records, and
+ * a record or a header torn by a crash is dropped. {@link #record(String, boolean)} may be called from any
+ * thread and never blocks on the disk.
+ * </p>
+ * <p>
+ * The appended records are flushed to the file but not synced, so the last records may be lost
+ * if the device, not the process, goes down. Only the compacted journal is synced, before it
+ * replaces the old one.
+ * </p>
+ * The file layout (big-endian) is:
+ * <pre>
+ * int    magic      'TAGJ'
+ * int    version    1
+ * record*           byte op (1 check, 0 uncheck), then the tag id in modified UTF-8
+ * </pre>
+ */
+public class TagSelectionJournal {
+    private static final int MAGIC = 0x5441474A;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The longest id writeUTF can write, in bytes.
+     */
+    private static final int MAX_ID_LENGTH = 65535;
+
+    private static final byte OP_UNCHECK = 0;
+    private static final byte OP_CHECK = 1;
+
+    /**
+     * The journal is compacted when it has more records than this, and more than twice the
+     * checked tags.
+     */
+    private static final int MIN_COMPACT_RECORDS = 256;
+
+    /**
+     * The single background thread shared by all journals.
+     */
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "TagJournal-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final File mFile;
+
+    /**
+     * The checked tag ids, in the order they were checked. Guarded by itself.
+     */
+    private final Set<String> mChecked;
+
+    /**
+     * The records not written yet, and whether a write is scheduled for them.
+     */
+    private final ConcurrentLinkedQueue<Record> mPending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mWriteScheduled = new AtomicBoolean();
+
+    private final Runnable mWrite = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+
+    /**
+     * The stream appending to the journal, the record count in the journal and the first write
+     * failure, only used by the writer thread.
+     */
+    private DataOutputStream mOut;
+    private int mRecordCount;
+    private IOException mFailure;
+
+    private TagSelectionJournal(File file, Set<String> checked, int recordCount) {
+        mFile = file;
+        mChecked = checked;
+        mRecordCount = recordCount;
+    }
+
+    /**
+     * Open a journal, creating it if needed, and replay it to restore the checked tags.
+     * It reads the file, so call it off the UI thread for large selections.
+     *
+     * @param file the journal file.
+     * @return the journal, see {@link #getCheckedIds()} for the restored tags.
+     * @throws IOException if the file is not a journal or can not be read.
+     */
+    public static TagSelectionJournal open(File file) throws IOException {
+        final Set<String> checked = new LinkedHashSet<>();
+        final long length = file.length();
+        if (length > 0 && length < HEADER_SIZE) {
+            if (!isTornHeader(file, (int) length)) {
+                throw new IOException("Not a tag selection journal");
+            }
+            // The header was torn by a crash while the journal was created, it has no record.
+            writeSnapshot(file, checked);
+            return new TagSelectionJournal(file, checked, 0);
+        }
+
+        int recordCount = 0;
+        long validLength = HEADER_SIZE;
+        if (length > 0) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a tag selection journal");
+                }
+                final int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported tag selection journal version " + version);
+                }
+                while (true) {
+                    final int op = in.read();
+                    if (op < 0) {
+                        break;
+                    }
+                    if (op != OP_CHECK && op != OP_UNCHECK) {
+                        throw new IOException("Corrupt tag selection journal record at " + validLength);
+                    }
+                    final String id;
+                    try {
+                        id = in.readUTF();
+                    } catch (EOFException e) {
+                        // The last record was torn by a crash, it is dropped.
+                        break;
+                    }
+                    if (op == OP_CHECK) {
+                        checked.add(id);
+                    } else {
+                        checked.remove(id);
+                    }
+                    recordCount++;
+                    validLength += 1 + 2 + utfLength(id);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        if (length != validLength) {
+            if (length == 0) {
+                writeSnapshot(file, Collections.<String>emptySet());
+            } else {
+                // Cut the torn record, so the next records are appended after a valid one.
+                final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(validLength);
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+        return new TagSelectionJournal(file, checked, recordCount);
+    }
+
+    /**
+     * Returns a copy of the checked tag ids, in the order they were checked.
+     */
+    public Set<String> getCheckedIds() {
+        synchronized (mChecked) {
+            return new LinkedHashSet<>(mChecked);
+        }
+    }
+
+    /**
+     * Record that a tag has been checked or unchecked. The record is written on the background
+     * thread, together with the other records made until then, and flushed but not synced.
+     *
+     * @param id      the tag id, the tag text in <code>TagGroupNoEdit</code>.
+     * @param checked true if the tag is checked now, false otherwise.
+     * @throws IllegalArgumentException if the id is longer than 65535 bytes in modified UTF-8.
+     */
+    public void record(String id, boolean checked) {
+        if (utfLength(id) > MAX_ID_LENGTH) {
+            // Rejected here, writeUTF would fail later on the writer thread.
+            throw new IllegalArgumentException("Tag id too long: " + utfLength(id) + " bytes");
+        }
+        synchronized (mChecked) {
+            if (!(checked ? mChecked.add(id) : mChecked.remove(id))) {
+                // Already in this state, nothing to record.
+                return;
+            }
+            // Queued under the lock, so the records of a tag are written in the order they
+            // are applied to the checked tags.
+            mPending.offer(new Record(id, checked));
+        }
+        if (mWriteScheduled.compareAndSet(false, true)) {
+            WRITER.execute(mWrite);
+        }
+    }
+
+    /**
+     * Write the pending records and close the journal file, the journal can still record and
+     * will open the file again.
+     *
+     * @throws IOException if a record could not be written since the journal was opened.
+     */
+    public void close() throws IOException {
+        final Future<?> done = WRITER.submit(new Runnable() {
+            @Override
+            public void run() {
+                writePending();
+                closeOut();
+            }
+        });
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the journal");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        if (mFailure != null) {
+            throw mFailure;
+        }
+    }
+
+    /**
+     * Append the pending records in one go, then compact the journal if it is worth it.
+     * Runs on the writer thread.
+     */
+    private void writePending() {
+        // Clear the flag first, so a record made while writing schedules the next write.
+        mWriteScheduled.set(false);
+        if (mPending.isEmpty()) {
+            return;
+        }
+        try {
+            if (mOut == null) {
+                mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, true)));
+            }
+            Record record;
+            while ((record = mPending.poll()) != null) {
+                mOut.writeByte(record.checked ? OP_CHECK : OP_UNCHECK);
+                mOut.writeUTF(record.id);
+                mRecordCount++;
+            }
+            mOut.flush();
+
+            final List<String> snapshot;
+            synchronized (mChecked) {
+                if (mRecordCount <= MIN_COMPACT_RECORDS || mRecordCount <= 2 * mChecked.size()) {
+                    return;
+                }
+                snapshot = new ArrayList<>(mChecked);
+            }
+            compact(snapshot);
+        } catch (IOException e) {
+            if (mFailure == null) {
+                mFailure = e;
+            }
+            closeOut();
+        }
+    }
+
+    /**
+     * Replace the journal by one check record per checked tag. The records made after the
+     * snapshot are still pending, and are appended to the compacted journal.
+     */
+    private void compact(List<String> snapshot) throws IOException {
+        closeOut();
+        final File temp = new File(mFile.getPath() + ".tmp");
+        writeSnapshot(temp, snapshot);
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            throw new IOException("Could not replace " + mFile);
+        }
+        mRecordCount = snapshot.size();
+    }
+
+    private static void writeSnapshot(File file, Iterable<String> checked) throws IOException {
+        final FileOutputStream fileOut = new FileOutputStream(file);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (String id : checked) {
+                out.writeByte(OP_CHECK);
+                out.writeUTF(id);
+            }
+            out.flush();
+            // The snapshot replaces the journal, it must be on the disk before the rename.
+            fileOut.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns true if the file, shorter than the header, holds the start of the header.
+     */
+    private static boolean isTornHeader(File file, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        for (int i = 0; i < length; i++) {
+            final int word = i < 4 ? MAGIC : VERSION;
+            if (bytes[i] != (byte) (word >>> (24 - 8 * (i % 4)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void closeOut() {
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                if (mFailure == null) {
+                    mFailure = e;
+                }
+            }
+            mOut = null;
+        }
+    }
+
+    /**
+     * Returns the length of the string in modified UTF-8, as written by writeUTF.
+     */
+    private static int utfLength(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return length;
+    }
+
+    private static final class Record {
+        final String id;
+        final boolean checked;
+
+        Record(String id, boolean checked) {
+            this.id = id;
+            this.checked = checked;
+        }
+    }
+}
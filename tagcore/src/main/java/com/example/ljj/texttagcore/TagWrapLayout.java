@@ -0,0 +1,155 @@
+package com.example.ljj.texttagcore;
+
+/**
+ * The wrap mode of <code>TagGroupNoEdit</code>: its size in onMeasure and the tag positions in
+ * onLayout, over tags of any kind. The view runs it on its children, and the reference engine of
+ * the layout fuzz test on random tag sizes, so the other engines are checked against the code
+ * the view actually runs.
+ * <p>
+ * A tag which does not fit in the rest of the row starts a new row, unless it is the first tag
+ * of the row; a row is as high as its highest tag. When centering, the rows are centered in the
+ * full width, paddings included.
+ * </p>
+ */
+public final class TagWrapLayout {
+
+    /**
+     * The measured tags of a group.
+     */
+    public interface Tags {
+        int getCount();
+
+        int getWidth(int index);
+
+        int getHeight(int index);
+
+        boolean isGone(int index);
+
+        /**
+         * Place the tag, the tags of a centered row are placed again once the row is complete.
+         */
+        void place(int index, int left, int top);
+    }
+
+    private TagWrapLayout() {
+    }
+
+    /**
+     * Measure the group, the rows are broken in the width inside the padding like in
+     * {@link #layout}.
+     *
+     * @param widthSize the width the group is measured in.
+     * @param size      receives the width and the height the group needs, paddings included:
+     *                  the width of its only row, or the width size when the tags take several
+     *                  rows.
+     */
+    public static void measure(Tags tags, int widthSize, int horizontalSpacing, int verticalSpacing,
+                               int paddingLeft, int paddingTop, int paddingRight, int paddingBottom,
+                               int[] size) {
+        int width;
+        int height = 0;
+
+        final int availableWidth = widthSize - paddingLeft - paddingRight;
+        int row = 0; // The row counter.
+        int rowWidth = 0; // Calc the current row width, with a trailing spacing.
+        int rowMaxHeight = 0; // Calc the max tag height, in current row.
+
+        final int count = tags.getCount();
+        for (int i = 0; i < count; i++) {
+            final int childWidth = tags.getWidth(i);
+            final int childHeight = tags.getHeight(i);
+
+            if (!tags.isGone(i)) {
+                // A tag wider than the row still starts the row, it never leaves an empty row.
+                if (rowWidth > 0 && rowWidth + childWidth > availableWidth) { // Next line.
+                    rowWidth = 0;
+                    height += rowMaxHeight + verticalSpacing;
+                    rowMaxHeight = 0;
+                    row++;
+                }
+                rowMaxHeight = Math.max(rowMaxHeight, childHeight);
+                rowWidth += childWidth + horizontalSpacing;
+            }
+        }
+        // Account for the last row height.
+        height += rowMaxHeight;
+
+        // Account for the padding too.
+        height += paddingTop + paddingBottom;
+
+        // If the tags grouped in one row, set the width to wrap the tags.
+        if (row == 0) {
+            width = rowWidth > 0 ? rowWidth - horizontalSpacing : 0;
+            width += paddingLeft + paddingRight;
+        } else { // If the tags grouped exceed one line, set the width to match the parent.
+            width = widthSize;
+        }
+
+        size[0] = width;
+        size[1] = height;
+    }
+
+    /**
+     * Place the tags of a group laid out in the width.
+     *
+     * @param parentWidth the width of the group, paddings included.
+     */
+    public static void layout(Tags tags, int parentWidth, int horizontalSpacing, int verticalSpacing,
+                              int paddingLeft, int paddingTop, int paddingRight, boolean center) {
+        final int parentLeft = paddingLeft;
+        final int parentRight = parentWidth - paddingRight;
+
+        int childLeft = parentLeft;
+        int childTop = paddingTop;
+
+        int rowMaxHeight = 0;
+        int rowStart = 0; // The first tag of the current row, GONE tags included.
+
+        final int count = tags.getCount();
+        for (int i = 0; i < count; i++) {
+            final int width = tags.getWidth(i);
+            final int height = tags.getHeight(i);
+            if (!tags.isGone(i)) {
+                if (childLeft > parentLeft && childLeft + width > parentRight) { // Next line
+                    if (center) {
+                        adjustLine(tags, horizontalSpacing, rowStart, i,
+                                parentWidth - (childLeft - parentLeft - horizontalSpacing), childTop);
+                    }
+                    rowStart = i;
+                    childLeft = parentLeft;
+                    childTop += rowMaxHeight + verticalSpacing;
+                    rowMaxHeight = height;
+                } else {
+                    rowMaxHeight = Math.max(rowMaxHeight, height);
+                }
+                tags.place(i, childLeft, childTop);
+
+                childLeft += width + horizontalSpacing;
+            }
+        }
+
+        if (center) {
+            adjustLine(tags, horizontalSpacing, rowStart, count,
+                    parentWidth - (childLeft - parentLeft - horizontalSpacing), childTop);
+        }
+    }
+
+    /**
+     * Center a row: its tags start at half the width the row leaves.
+     *
+     * @param from       the first tag of the row.
+     * @param to         the tag after the row.
+     * @param childWidth the width the row leaves in the group width.
+     * @param top        the top of the row.
+     */
+    private static void adjustLine(Tags tags, int horizontalSpacing, int from, int to, int childWidth, int top) {
+        int totalLeft = childWidth / 2;
+        for (int i = from; i < to; i++) {
+            if (tags.isGone(i)) {
+                continue;
+            }
+            tags.place(i, totalLeft, top);
+            totalLeft += tags.getWidth(i) + horizontalSpacing;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.ljj.texttagcore;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Corrupt layouts are rejected with an IOException. The round trips are covered by
+ * {@link TagLayoutFuzzTest}.
+ */
+public class TagLayoutCodecTest {
+    /**
+     * The bytes of a layout of 5 tags on 3 rows, the tags starting at {@link #TAGS_OFFSET}.
+     */
+    private static byte[] encoded() throws IOException {
+        final TagLayout layout = new TagLineBreaker()
+                .setSpacing(4, 4)
+                .layout(new int[]{30, 30, 50, 20, 20}, new int[]{10, 10, 10, 10, 10},
+                        new boolean[5], 70);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TagLayoutCodec.write(layout, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * The offset of the tag count: the magic, then 10 one byte varints and the style key.
+     */
+    private static int countOffset(byte[] bytes) {
+        return bytes.length - 5 * 3 - 3 - 1;
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        final byte[] bytes = encoded();
+        final TagLayout layout = TagLayoutCodec.read(new ByteArrayInputStream(bytes));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TagLayoutCodec.write(layout, out);
+        assertEquals(Arrays.toString(bytes), Arrays.toString(out.toByteArray()));
+    }
+
+    @Test
+    public void rejectsNegativeCount() throws Exception {
+        final byte[] bytes = encoded();
+        final byte[] corrupt = splice(bytes, countOffset(bytes), 1, new byte[]{-1, -1, -1, -1, 0x0F});
+        assertRejected(corrupt);
+    }
+
+    @Test
+    public void rejectsHugeCount() throws Exception {
+        final byte[] bytes = encoded();
+        // 0x7FFFFFFF tags, the stream ends long before.
+        final byte[] corrupt = splice(bytes, countOffset(bytes), 1, new byte[]{-1, -1, -1, -1, 0x07});
+        assertRejected(corrupt);
+    }
+
+    @Test
+    public void rejectsTooManyRows() throws Exception {
+        final byte[] bytes = encoded();
+        // The row count follows the tags, then the 2 row deltas.
+        bytes[bytes.length - 3] = 6;
+        assertRejected(bytes);
+    }
+
+    @Test
+    public void rejectsEmptyRow() throws Exception {
+        final byte[] bytes = encoded();
+        bytes[bytes.length - 1] = 0;
+        assertRejected(bytes);
+    }
+
+    @Test
+    public void rejectsRowPastTheTags() throws Exception {
+        final byte[] bytes = encoded();
+        bytes[bytes.length - 1] = 4;
+        assertRejected(bytes);
+    }
+
+    @Test
+    public void rejectsTruncated() throws Exception {
+        final byte[] bytes = encoded();
+        for (int length = 0; length < bytes.length; length++) {
+            assertRejected(Arrays.copyOf(bytes, length));
+        }
+    }
+
+    @Test
+    public void rejectsBadMagic() throws Exception {
+        final byte[] bytes = encoded();
+        bytes[0] = 'X';
+        assertRejected(bytes);
+    }
+
+    private static byte[] splice(byte[] bytes, int offset, int removed, byte[] inserted) {
+        final byte[] result = new byte[bytes.length - removed + inserted.length];
+        System.arraycopy(bytes, 0, result, 0, offset);
+        System.arraycopy(inserted, 0, result, offset, inserted.length);
+        System.arraycopy(bytes, offset + removed, result, offset + inserted.length,
+                bytes.length - offset - removed);
+        return result;
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            TagLayoutCodec.read(new ByteArrayInputStream(bytes));
+            fail("read a corrupt layout " + Arrays.toString(bytes));
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.ljj.texttagcore;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Differential fuzz test of the wrap mode layout: random tag sizes, spacings, paddings, GONE
+ * tags, centering and width modes are laid out by the reference algorithm, the
+ * {@link TagWrapLayout} the view lays its tags out with, and by every other engine, and
+ * any divergence in the measured size or the tag positions is reported with the seed of the
+ * case to replay it.
+ * <p>
+ * The seed and the number of cases can be changed with the <code>tagcore.fuzz.seed</code> and
+ * <code>tagcore.fuzz.cases</code> system properties.
+ * </p>
+ */
+public class TagLayoutFuzzTest {
+    private static final long SEED = Long.getLong("tagcore.fuzz.seed", 0x7A61L);
+    private static final int CASES = Integer.getInteger("tagcore.fuzz.cases", 5000);
+
+    /**
+     * The engines checked against the reference.
+     */
+    private static final Engine[] ENGINES = {new LineBreakerEngine(), new CodecEngine()};
+
+    @Test
+    public void enginesMatchReference() throws Exception {
+        final Random seeds = new Random(SEED);
+        final StringBuilder report = new StringBuilder();
+        int divergences = 0;
+        for (int i = 0; i < CASES; i++) {
+            final long seed = seeds.nextLong();
+            final Case c = Case.random(new Random(seed));
+            final Result expected = new ReferenceEngine().layout(c);
+            for (Engine engine : ENGINES) {
+                final String divergence = expected.diff(engine.layout(c));
+                if (divergence != null) {
+                    if (divergences++ < 10) {
+                        report.append('\n').append(engine.getClass().getSimpleName())
+                                .append(" seed=").append(seed).append(' ').append(c)
+                                .append(": ").append(divergence);
+                    }
+                }
+            }
+        }
+        if (divergences > 0) {
+            fail(divergences + " divergences in " + CASES + " cases" + report);
+        }
+    }
+
+    @Test
+    public void referenceKeepsTagsInsideTheRows() {
+        final Random seeds = new Random(SEED + 1);
+        for (int i = 0; i < CASES; i++) {
+            final long seed = seeds.nextLong();
+            final Case c = Case.random(new Random(seed));
+            final Result r = new ReferenceEngine().layout(c);
+            int previous = -1;
+            for (int t = 0; t < c.widths.length; t++) {
+                if (c.gone[t]) {
+                    continue;
+                }
+                if (previous >= 0 && r.tops[previous] == r.tops[t]) {
+                    assertTrue("seed=" + seed + " tags " + previous + " and " + t + " overlap",
+                            r.lefts[previous] + c.widths[previous] + c.horizontalSpacing <= r.lefts[t]);
+                    // Only a tag at the start of the row, e.g. after empty tags, may exceed it.
+                    assertTrue("seed=" + seed + " tag " + t + " exceeds the row",
+                            c.center || r.lefts[t] == c.paddingLeft
+                                    || r.lefts[t] + c.widths[t] <= r.layoutWidth - c.paddingRight);
+                } else if (previous >= 0) {
+                    assertTrue("seed=" + seed + " tag " + t + " starts a row above the previous one",
+                            r.tops[t] > r.tops[previous]);
+                }
+                previous = t;
+            }
+        }
+    }
+
+    @Test
+    public void moveMatchesFullLayout() {
+        final Random seeds = new Random(SEED + 2);
+        for (int i = 0; i < CASES; i++) {
+            final long seed = seeds.nextLong();
+            final Random random = new Random(seed);
+            final Case c = Case.random(random);
+            if (c.widths.length == 0) {
+                continue;
+            }
+            final TagLineBreaker breaker = new TagLineBreaker()
+                    .setSpacing(c.horizontalSpacing, c.verticalSpacing)
+                    .setPadding(c.paddingLeft, c.paddingTop, c.paddingRight, c.paddingBottom)
+                    .setCenter(c.center);
+            TagLayout layout = breaker.layout(c.widths, c.heights, c.gone, c.widthSize);
+            // A drag moves the same tag several times.
+            for (int step = 0; step < 4; step++) {
+                final int from = random.nextInt(c.widths.length);
+                final int to = random.nextInt(c.widths.length);
+                layout = TagLineBreaker.move(layout, from, to);
+                moveTag(c, from, to);
+                final TagLayout expected = breaker.layout(c.widths, c.heights, c.gone, c.widthSize);
+                if (!expected.equals(layout)) {
+                    fail("seed=" + seed + " step=" + step + " move " + from + " to " + to + " " + c);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tagAtFindsEveryTag() {
+        final Random seeds = new Random(SEED + 3);
+        for (int i = 0; i < CASES; i++) {
+            final long seed = seeds.nextLong();
+            final Case c = Case.random(new Random(seed));
+            final TagLayout layout = new TagLineBreaker()
+                    .setSpacing(c.horizontalSpacing, c.verticalSpacing)
+                    .setPadding(c.paddingLeft, c.paddingTop, c.paddingRight, c.paddingBottom)
+                    .setCenter(c.center)
+                    .layout(c.widths, c.heights, c.gone, c.widthSize);
+            for (int t = 0; t < c.widths.length; t++) {
+                if (c.gone[t] || c.widths[t] == 0) {
+                    continue;
+                }
+                final int x = layout.getTagLeft(t) + c.widths[t] / 2;
+                final int y = layout.getTagTop(t) + c.heights[t] / 2;
+                assertTrue("seed=" + seed + " tag " + t, layout.tagAt(x, y) == t);
+            }
+        }
+    }
+
+    private static void moveTag(Case c, int from, int to) {
+        final List<Integer> widths = new ArrayList<>();
+        final List<Integer> heights = new ArrayList<>();
+        final List<Boolean> gone = new ArrayList<>();
+        for (int i = 0; i < c.widths.length; i++) {
+            widths.add(c.widths[i]);
+            heights.add(c.heights[i]);
+            gone.add(c.gone[i]);
+        }
+        widths.add(to, widths.remove(from));
+        heights.add(to, heights.remove(from));
+        gone.add(to, gone.remove(from));
+        for (int i = 0; i < c.widths.length; i++) {
+            c.widths[i] = widths.get(i);
+            c.heights[i] = heights.get(i);
+            c.gone[i] = gone.get(i);
+        }
+    }
+
+    /**
+     * A random group: the sizes of its tags, its style and how its parent measures it.
+     */
+    static final class Case {
+        int[] widths;
+        int[] heights;
+        boolean[] gone;
+        int horizontalSpacing;
+        int verticalSpacing;
+        int paddingLeft;
+        int paddingTop;
+        int paddingRight;
+        int paddingBottom;
+        boolean center;
+        int widthSize;
+
+        /**
+         * True if the width is exact, otherwise the group is laid out at its measured width.
+         */
+        boolean exactWidth;
+
+        static Case random(Random random) {
+            final Case c = new Case();
+            final int count = random.nextInt(4) == 0 ? random.nextInt(3) : random.nextInt(40);
+            c.widths = new int[count];
+            c.heights = new int[count];
+            c.gone = new boolean[count];
+            final int goneRate = random.nextInt(4);
+            final boolean sameHeight = random.nextBoolean();
+            final int height = 20 + random.nextInt(40);
+            for (int i = 0; i < count; i++) {
+                // Mostly regular tags, sometimes empty or wider than the group.
+                final int kind = random.nextInt(20);
+                c.widths[i] = kind == 0 ? 0 : kind == 1 ? 300 + random.nextInt(600) : 10 + random.nextInt(200);
+                c.heights[i] = sameHeight ? height : 10 + random.nextInt(80);
+                c.gone[i] = goneRate > 0 && random.nextInt(goneRate * 3) == 0;
+            }
+            c.horizontalSpacing = random.nextInt(5) == 0 ? 0 : random.nextInt(30);
+            c.verticalSpacing = random.nextInt(5) == 0 ? 0 : random.nextInt(30);
+            final boolean padded = random.nextBoolean();
+            c.paddingLeft = padded ? random.nextInt(40) : 0;
+            c.paddingTop = padded ? random.nextInt(40) : 0;
+            c.paddingRight = padded ? random.nextInt(40) : 0;
+            c.paddingBottom = padded ? random.nextInt(40) : 0;
+            c.center = random.nextBoolean();
+            c.widthSize = random.nextInt(10) == 0 ? random.nextInt(100) : 100 + random.nextInt(900);
+            c.exactWidth = random.nextBoolean();
+            return c;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + widths.length + " width=" + widthSize + (exactWidth ? " exact" : " wrap")
+                    + " spacing=" + horizontalSpacing + "," + verticalSpacing
+                    + " padding=" + paddingLeft + "," + paddingTop + "," + paddingRight + "," + paddingBottom
+                    + " center=" + center + " widths=" + Arrays.toString(widths)
+                    + " heights=" + Arrays.toString(heights) + " gone=" + Arrays.toString(gone) + "}";
+        }
+    }
+
+    /**
+     * The measured size of a group and the positions of its tags, GONE tags are at 0, 0.
+     */
+    static final class Result {
+        int measuredWidth;
+        int measuredHeight;
+        int layoutWidth;
+        int[] lefts;
+        int[] tops;
+
+        /**
+         * Returns the first difference with the other result, or null if they are the same.
+         */
+        String diff(Result other) {
+            if (measuredWidth != other.measuredWidth || measuredHeight != other.measuredHeight) {
+                return "measured " + other.measuredWidth + "x" + other.measuredHeight
+                        + ", expected " + measuredWidth + "x" + measuredHeight;
+            }
+            for (int i = 0; i < lefts.length; i++) {
+                if (lefts[i] != other.lefts[i] || tops[i] != other.tops[i]) {
+                    return "tag " + i + " at " + other.lefts[i] + "," + other.tops[i]
+                            + ", expected " + lefts[i] + "," + tops[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    interface Engine {
+        Result layout(Case c);
+    }
+
+    /**
+     * The wrap mode of <code>TagGroupNoEdit</code>, run by {@link TagWrapLayout} like the view
+     * does. It is the reference every other engine is checked against.
+     */
+    static final class ReferenceEngine implements Engine {
+        @Override
+        public Result layout(final Case c) {
+            final Result result = new Result();
+            result.lefts = new int[c.widths.length];
+            result.tops = new int[c.widths.length];
+            final TagWrapLayout.Tags tags = new TagWrapLayout.Tags() {
+                @Override
+                public int getCount() {
+                    return c.widths.length;
+                }
+
+                @Override
+                public int getWidth(int index) {
+                    return c.widths[index];
+                }
+
+                @Override
+                public int getHeight(int index) {
+                    return c.heights[index];
+                }
+
+                @Override
+                public boolean isGone(int index) {
+                    return c.gone[index];
+                }
+
+                @Override
+                public void place(int index, int left, int top) {
+                    result.lefts[index] = left;
+                    result.tops[index] = top;
+                }
+            };
+
+            final int[] size = new int[2];
+            TagWrapLayout.measure(tags, c.widthSize, c.horizontalSpacing, c.verticalSpacing,
+                    c.paddingLeft, c.paddingTop, c.paddingRight, c.paddingBottom, size);
+            result.measuredWidth = c.exactWidth ? c.widthSize : size[0];
+            result.measuredHeight = size[1];
+            result.layoutWidth = result.measuredWidth;
+            TagWrapLayout.layout(tags, result.layoutWidth, c.horizontalSpacing, c.verticalSpacing,
+                    c.paddingLeft, c.paddingTop, c.paddingRight, c.center);
+            return result;
+        }
+    }
+
+    /**
+     * {@link TagLineBreaker}, measuring at the width size and laying out again at the measured
+     * width when the group wraps its tags, like the view is laid out by its parent.
+     */
+    static class LineBreakerEngine implements Engine {
+        @Override
+        public Result layout(Case c) {
+            final TagLineBreaker breaker = new TagLineBreaker()
+                    .setSpacing(c.horizontalSpacing, c.verticalSpacing)
+                    .setPadding(c.paddingLeft, c.paddingTop, c.paddingRight, c.paddingBottom)
+                    .setCenter(c.center);
+            final TagLayout measured = breaker.layout(c.widths, c.heights, c.gone, c.widthSize);
+            final int layoutWidth = c.exactWidth ? c.widthSize : measured.getMeasuredWidth();
+            final TagLayout laidOut = layoutWidth == c.widthSize ? measured
+                    : breaker.layout(c.widths, c.heights, c.gone, layoutWidth);
+
+            final Result result = new Result();
+            result.measuredWidth = layoutWidth;
+            result.measuredHeight = measured.getMeasuredHeight();
+            result.layoutWidth = layoutWidth;
+            result.lefts = new int[c.widths.length];
+            result.tops = new int[c.widths.length];
+            for (int i = 0; i < c.widths.length; i++) {
+                result.lefts[i] = laidOut.getTagLeft(i);
+                result.tops[i] = laidOut.getTagTop(i);
+            }
+            return transform(laidOut, result);
+        }
+
+        Result transform(TagLayout layout, Result result) {
+            return result;
+        }
+    }
+
+    /**
+     * {@link TagLineBreaker} through a {@link TagLayoutCodec} round trip, the decoded layout must
+     * be equal to the encoded one and place the tags at the same positions.
+     */
+    static final class CodecEngine extends LineBreakerEngine {
+        @Override
+        Result transform(TagLayout layout, Result result) {
+            final TagLayout decoded;
+            try {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                TagLayoutCodec.write(layout, out);
+                decoded = TagLayoutCodec.read(new ByteArrayInputStream(out.toByteArray()));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            if (!decoded.equals(layout)) {
+                // Poison the result so the divergence is reported.
+                result.measuredWidth = -1;
+                return result;
+            }
+            for (int i = 0; i < result.lefts.length; i++) {
+                result.lefts[i] = decoded.getTagLeft(i);
+                result.tops[i] = decoded.getTagTop(i);
+            }
+            return result;
+        }
+    }
+}
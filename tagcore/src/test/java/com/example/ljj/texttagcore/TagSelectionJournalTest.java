@@ -0,0 +1,212 @@
+package com.example.ljj.texttagcore;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Replay, torn record recovery and compaction of the selection journal.
+ */
+public class TagSelectionJournalTest {
+    private static final int HEADER_SIZE = 8;
+
+    private static File newFile() throws IOException {
+        final File file = File.createTempFile("selection", ".journal");
+        file.deleteOnExit();
+        // Opened as a new journal.
+        assertTrue(file.delete());
+        return file;
+    }
+
+    private static Set<String> ids(String... ids) {
+        return new LinkedHashSet<>(Arrays.asList(ids));
+    }
+
+    @Test
+    public void newJournalIsEmpty() throws Exception {
+        final File file = newFile();
+        final TagSelectionJournal journal = TagSelectionJournal.open(file);
+        assertEquals(ids(), journal.getCheckedIds());
+        journal.close();
+        assertEquals(HEADER_SIZE, file.length());
+    }
+
+    @Test
+    public void replaysRecords() throws Exception {
+        final File file = newFile();
+        final TagSelectionJournal journal = TagSelectionJournal.open(file);
+        journal.record("a", true);
+        journal.record("b", true);
+        journal.record("标签", true);
+        journal.record("a", false);
+        journal.record("c", true);
+        assertEquals(ids("b", "标签", "c"), journal.getCheckedIds());
+        journal.close();
+
+        assertEquals(ids("b", "标签", "c"), TagSelectionJournal.open(file).getCheckedIds());
+    }
+
+    @Test
+    public void recordsOnlyChanges() throws Exception {
+        final File file = newFile();
+        final TagSelectionJournal journal = TagSelectionJournal.open(file);
+        journal.record("a", true);
+        journal.record("a", true);
+        journal.record("b", false);
+        journal.close();
+        // One record: op, length and "a".
+        assertEquals(HEADER_SIZE + 1 + 2 + 1, file.length());
+    }
+
+    @Test
+    public void dropsTornRecord() throws Exception {
+        final File file = newFile();
+        TagSelectionJournal journal = TagSelectionJournal.open(file);
+        journal.record("first", true);
+        journal.record("second", true);
+        journal.close();
+
+        final byte[] complete = Files.readAllBytes(file.toPath());
+        final int valid = complete.length - (1 + 2 + "second".length());
+        // Every cut inside the last record drops it, and only it.
+        for (int length = complete.length - 1; length > valid; length--) {
+            write(file, Arrays.copyOf(complete, length));
+            journal = TagSelectionJournal.open(file);
+            assertEquals(ids("first"), journal.getCheckedIds());
+            assertEquals(valid, file.length());
+            journal.close();
+        }
+
+        // The next records are appended after the last valid one.
+        write(file, Arrays.copyOf(complete, complete.length - 1));
+        journal = TagSelectionJournal.open(file);
+        journal.record("third", true);
+        journal.close();
+        assertEquals(ids("first", "third"), TagSelectionJournal.open(file).getCheckedIds());
+    }
+
+    @Test
+    public void recoversTornHeader() throws Exception {
+        final File file = newFile();
+        TagSelectionJournal.open(file).close();
+        for (long length = 1; length < HEADER_SIZE; length++) {
+            truncate(file, length);
+            final TagSelectionJournal journal = TagSelectionJournal.open(file);
+            assertEquals(ids(), journal.getCheckedIds());
+            assertEquals(HEADER_SIZE, file.length());
+            journal.record("a", true);
+            journal.close();
+            assertEquals(ids("a"), TagSelectionJournal.open(file).getCheckedIds());
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws Exception {
+        final File file = newFile();
+        write(file, new byte[]{'n', 'o', 't'});
+        assertRejected(file);
+        write(file, "not a journal at all".getBytes("UTF-8"));
+        assertRejected(file);
+    }
+
+    @Test
+    public void rejectsUnknownOp() throws Exception {
+        final File file = newFile();
+        final TagSelectionJournal journal = TagSelectionJournal.open(file);
+        journal.record("a", true);
+        journal.record("b", true);
+        journal.close();
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(HEADER_SIZE);
+            raf.writeByte(7);
+        } finally {
+            raf.close();
+        }
+        assertRejected(file);
+    }
+
+    @Test
+    public void rejectsTooLongId() throws Exception {
+        final File file = newFile();
+        final TagSelectionJournal journal = TagSelectionJournal.open(file);
+        final char[] id = new char[65535 / 3 + 1];
+        Arrays.fill(id, '\u4e2d');
+        try {
+            journal.record(new String(id), true);
+            fail("recorded an id of " + id.length + " chars");
+        } catch (IllegalArgumentException expected) {
+        }
+        // Neither recorded nor breaking the records after it.
+        journal.record("a", true);
+        journal.close();
+        assertEquals(ids("a"), TagSelectionJournal.open(file).getCheckedIds());
+    }
+
+    @Test
+    public void compacts() throws Exception {
+        final File file = newFile();
+        final TagSelectionJournal journal = TagSelectionJournal.open(file);
+        journal.record("kept", true);
+        for (int i = 0; i < 1000; i++) {
+            journal.record("toggled", i % 2 == 0);
+        }
+        journal.record("last", true);
+        journal.close();
+
+        // Far fewer records than written, and the same selection.
+        final long recordSize = 1 + 2 + "toggled".length();
+        assertTrue("not compacted: " + file.length(), file.length() < HEADER_SIZE + 300 * recordSize);
+        assertEquals(ids("kept", "last"), TagSelectionJournal.open(file).getCheckedIds());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void recordsAfterClose() throws Exception {
+        final File file = newFile();
+        final TagSelectionJournal journal = TagSelectionJournal.open(file);
+        journal.record("a", true);
+        journal.close();
+        journal.record("b", true);
+        journal.close();
+        assertEquals(ids("a", "b"), TagSelectionJournal.open(file).getCheckedIds());
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void assertRejected(File file) {
+        try {
+            TagSelectionJournal.open(file);
+            fail("opened " + file.length() + " bytes which are not a journal");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.ljj.texttagcore;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The selection rules: the max choose count, and the bulk operations checking in list order.
+ */
+public class TagSelectionTest {
+    private static TagSelection selection(int size, int maxChooseCount) {
+        final List<Tag> tags = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            tags.add(new Tag("id" + i, "tag " + i));
+        }
+        final TagSelection selection = TagSelection.of(tags);
+        selection.setMaxChooseCount(maxChooseCount);
+        return selection;
+    }
+
+    private static String checked(TagSelection selection) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < selection.size(); i++) {
+            result.append(selection.isChecked(i) ? 'x' : '-');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void toggleHonoursTheLimit() {
+        final TagSelection selection = selection(4, 2);
+        assertTrue(selection.toggle(0));
+        assertTrue(selection.toggle(2));
+        assertFalse(selection.canCheck());
+        assertFalse(selection.toggle(1));
+        assertEquals("x-x-", checked(selection));
+        // Unchecking is always allowed, and frees a slot.
+        assertTrue(selection.toggle(0));
+        assertTrue(selection.toggle(3));
+        assertEquals("--xx", checked(selection));
+        assertEquals(2, selection.getCheckedCount());
+    }
+
+    @Test
+    public void checkAllStopsAtTheLimit() {
+        final TagSelection selection = selection(5, 3);
+        selection.toggle(3);
+        assertEquals(2, selection.checkAll());
+        assertEquals("xx-x-", checked(selection));
+        assertEquals(0, selection.checkAll());
+    }
+
+    @Test
+    public void checkAllWithoutLimit() {
+        final TagSelection selection = selection(3, 0);
+        assertEquals(3, selection.checkAll());
+        assertEquals("xxx", checked(selection));
+        assertEquals(3, selection.getCheckedCount());
+    }
+
+    @Test
+    public void clear() {
+        final TagSelection selection = selection(4, 0);
+        selection.toggle(1);
+        selection.toggle(3);
+        assertEquals(2, selection.clear());
+        assertEquals("----", checked(selection));
+        assertEquals(0, selection.getCheckedCount());
+        assertEquals(0, selection.clear());
+    }
+
+    @Test
+    public void invertStopsCheckingAtTheLimit() {
+        final TagSelection selection = selection(5, 2);
+        selection.toggle(1);
+        assertEquals(3, selection.invert());
+        assertEquals("x-x--", checked(selection));
+        assertEquals(2, selection.getCheckedCount());
+    }
+
+    @Test
+    public void setCheckedByFilter() {
+        final TagSelection selection = selection(6, 2);
+        selection.toggle(0);
+        final int changed = selection.setChecked(new TagFilter() {
+            @Override
+            public boolean accept(Tag tag) {
+                return tag.getText().endsWith("1") || tag.getText().endsWith("3")
+                        || tag.getText().endsWith("5");
+            }
+        });
+        // Tag 0 is unchecked, and tag 5 is left out by the limit.
+        assertEquals(3, changed);
+        assertEquals("-x-x--", checked(selection));
+    }
+
+    @Test
+    public void setCheckedIds() {
+        final TagSelection selection = selection(4, 0);
+        assertEquals(2, selection.setCheckedIds(new HashSet<>(Arrays.asList("id2", "id0", "missing"))));
+        assertEquals("x-x-", checked(selection));
+        assertEquals(1, selection.setCheckedIds(new HashSet<>(Arrays.asList("id2"))));
+        assertEquals("--x-", checked(selection));
+    }
+
+    @Test
+    public void checkIdsLeavesTheOtherTags() {
+        final TagSelection selection = selection(5, 3);
+        selection.toggle(1);
+        // Tag 4 is left out by the limit, tag 1 stays checked.
+        assertEquals(2, selection.checkIds(new HashSet<>(Arrays.asList("id4", "id0", "id2", "missing"))));
+        assertEquals("xxx--", checked(selection));
+        assertEquals(0, selection.checkIds(new HashSet<>(Arrays.asList("id1"))));
+    }
+
+    @Test
+    public void neverExceedsTheLimitDuringAPass() {
+        final boolean[] checked = new boolean[6];
+        final int[] checkedCount = new int[1];
+        final TagSelection selection = new TagSelection() {
+            @Override
+            public int size() {
+                return checked.length;
+            }
+
+            @Override
+            public Tag getTag(int index) {
+                return new Tag("tag " + index);
+            }
+
+            @Override
+            public boolean isChecked(int index) {
+                return checked[index];
+            }
+
+            @Override
+            public int getCheckedCount() {
+                return checkedCount[0];
+            }
+
+            @Override
+            protected void set(int index, boolean check) {
+                checked[index] = check;
+                checkedCount[0] += check ? 1 : -1;
+                // What a listener of every change would see.
+                assertTrue("checked " + checkedCount[0] + " tags", checkedCount[0] <= getMaxChooseCount());
+            }
+        };
+        selection.setMaxChooseCount(2);
+        selection.toggle(4);
+        selection.toggle(5);
+
+        // The checked tags come after the tags to check.
+        assertEquals(4, selection.invert());
+        assertEquals("xx----", checked(selection));
+        assertEquals(4, selection.setChecked(new TagFilter() {
+            @Override
+            public boolean accept(Tag tag) {
+                return !tag.getText().endsWith("0") && !tag.getText().endsWith("1");
+            }
+        }));
+        assertEquals("--xx--", checked(selection));
+    }
+
+    @Test
+    public void bulkOperationsSkipUncheckableTags() {
+        final boolean[] checked = new boolean[4];
+        final int[] checkedCount = new int[1];
+        // Tag 1 is e.g. a text field among the tags.
+        final TagSelection selection = new TagSelection() {
+            @Override
+            public int size() {
+                return checked.length;
+            }
+
+            @Override
+            public Tag getTag(int index) {
+                assertTrue("filtered an uncheckable tag", index != 1);
+                return new Tag("tag " + index);
+            }
+
+            @Override
+            public boolean isChecked(int index) {
+                return checked[index];
+            }
+
+            @Override
+            public int getCheckedCount() {
+                return checkedCount[0];
+            }
+
+            @Override
+            public boolean isCheckable(int index) {
+                return index != 1;
+            }
+
+            @Override
+            protected void set(int index, boolean check) {
+                checked[index] = check;
+                checkedCount[0] += check ? 1 : -1;
+            }
+        };
+
+        assertEquals(3, selection.checkAll());
+        assertEquals("x-xx", checked(selection));
+        assertEquals(3, selection.invert());
+        assertEquals("----", checked(selection));
+        selection.setChecked(new TagFilter() {
+            @Override
+            public boolean accept(Tag tag) {
+                return true;
+            }
+        });
+        assertEquals("x-xx", checked(selection));
+        assertEquals(3, selection.getCheckedCount());
+    }
+}